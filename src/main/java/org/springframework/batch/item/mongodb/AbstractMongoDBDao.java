@@ -0,0 +1,183 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Map;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.WriteConcern;
+
+/**
+ * Base class of the DAOs that store the batch meta data in MongoDB.
+ * <p/>
+ * Ids are taken from counters in the collection <code>&lt;prefix&gt;sequences</code> that are incremented with 
+ * <code>findAndModify</code>. Execution contexts are stored in the documents of the executions as arrays of
+ * key/value pairs, since their keys usually contain dots. Values of BSON types are stored as they are, all
+ * others are serialized. All writes are acknowledged, so a failed write fails the job instead of getting lost.
+ */
+abstract class AbstractMongoDBDao implements InitializingBean {
+
+	/** By default, the names of the collections start with <code>batch_</code>. */
+	static final String DEFAULT_COLLECTION_PREFIX = "batch_";
+	
+	static final String JOB_INSTANCE = "job_instance";
+	
+	static final String JOB_EXECUTION = "job_execution";
+	
+	static final String STEP_EXECUTION = "step_execution";
+	
+	static final String SEQUENCES = "sequences";
+	
+	static final String ID = "_id";
+	
+	static final String VERSION = "version";
+	
+	static final String CONTEXT = "context";
+	
+	/** Write concern of all writes to the repository. */
+	static final WriteConcern WRITE_CONCERN = WriteConcern.ACKNOWLEDGED;
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Prefix of the collection names. */
+	protected String collectionPrefix = DEFAULT_COLLECTION_PREFIX;
+	
+	// protected methods .....................................................
+	
+	protected DBCollection getCollection(String name) {
+		return mongo.getDB(db).getCollection(collectionPrefix + name);
+	}
+	
+	/**
+	 * @return The next value of the counter.
+	 */
+	protected long nextId(String name) {
+		final DBObject counter = getCollection(SEQUENCES).findAndModify(
+			new BasicDBObject(ID, name), null, null, false, 
+			new BasicDBObject("$inc", new BasicDBObject("value", 1L)), true, true);
+		
+		return ((Number)counter.get("value")).longValue();
+	}
+	
+	protected static Long getLong(DBObject doc, String field) {
+		final Object value = doc.get(field);
+		return value == null ? null : ((Number)value).longValue();
+	}
+	
+	protected static int getInt(DBObject doc, String field) {
+		final Object value = doc.get(field);
+		return value == null ? 0 : ((Number)value).intValue();
+	}
+	
+	protected static Date getDate(DBObject doc, String field) {
+		return (Date)doc.get(field);
+	}
+	
+	/**
+	 * @return The execution context as array of key/value pairs.
+	 */
+	protected static BasicDBList toDBList(ExecutionContext executionContext) {
+		final BasicDBList list = new BasicDBList();
+		
+		for (Map.Entry<String, Object> entry: executionContext.entrySet()) {
+			final Object value = entry.getValue();
+			final DBObject pair = new BasicDBObject("k", entry.getKey());
+			
+			if ( isBsonValue(value) ) {
+				pair.put("v", value);
+			} else {
+				pair.put("s", serialize(value));
+			}
+			list.add(pair);
+		}
+		
+		return list;
+	}
+	
+	protected static ExecutionContext toExecutionContext(Object list) {
+		final ExecutionContext executionContext = new ExecutionContext();
+		
+		if (list instanceof BasicDBList) {
+			for (Object o: (BasicDBList)list) {
+				final DBObject pair = (DBObject)o;
+				final Object value = pair.containsField("s") ? deserialize((byte[])pair.get("s")) : pair.get("v");
+				executionContext.put((String)pair.get("k"), value);
+			}
+		}
+		
+		return executionContext;
+	}
+	
+	private static boolean isBsonValue(Object value) {
+		final Class<?> type = value == null ? null : value.getClass();
+		return type == String.class || type == Integer.class || type == Long.class || type == Double.class 
+			|| type == Boolean.class || type == Date.class;
+	}
+	
+	private static byte[] serialize(Object value) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(value);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot serialize execution context value: " + value, e);
+		}
+	}
+	
+	private static Object deserialize(byte[] bytes) {
+		try {
+			final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot deserialize execution context value", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Cannot deserialize execution context value", e);
+		}
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollectionPrefix(String collectionPrefix) {
+		this.collectionPrefix = collectionPrefix;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.notNull( collectionPrefix, "A collection prefix is required" );
+	}
+	
+}
@@ -0,0 +1,72 @@
+package org.springframework.batch.item.mongodb;
+
+import java.nio.charset.Charset;
+
+/**
+ * A simple Bloom filter for keys of documents. Keys are compared by their string representation,
+ * so keys of different types with the same string representation are treated as the same key,
+ * which only adds to the false positives.
+ */
+class BloomFilter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final long[] bits;
+	
+	private final long size;
+	
+	private final int hashes;
+	
+	/**
+	 * @param expectedKeys Number of keys the filter is sized for.
+	 * @param falsePositiveRate False positive rate at the expected number of keys.
+	 */
+	BloomFilter(long expectedKeys, double falsePositiveRate) {
+		final double ln2 = Math.log(2);
+		final long m = Math.max(64, (long)Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2)));
+		
+		this.bits = new long[ (int)((m + 63) / 64) ];
+		this.size = bits.length * 64L;
+		this.hashes = Math.max(1, (int)Math.round((double)size / expectedKeys * ln2));
+	}
+	
+	synchronized void put(Object key) {
+		final long hash = hash(key);
+		final int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32);
+		
+		for (int i = 0; i < hashes; i++) {
+			final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % size;
+			bits[(int)(bit >>> 6)] |= 1L << bit;
+		}
+	}
+	
+	synchronized boolean mightContain(Object key) {
+		final long hash = hash(key);
+		final int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32);
+		
+		for (int i = 0; i < hashes; i++) {
+			final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % size;
+			if ( (bits[(int)(bit >>> 6)] & (1L << bit)) == 0 ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** 64 bit FNV-1a hash of the string representation, with a final mix of the bits. */
+	private static long hash(Object key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b: String.valueOf(key).getBytes(UTF8)) {
+			hash ^= b;
+			hash *= 0x100000001b3L;
+		}
+		
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+}
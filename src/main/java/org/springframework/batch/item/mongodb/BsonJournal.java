@@ -0,0 +1,321 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.mongodb.DBEncoder;
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.OutputBuffer;
+
+/**
+ * An append-only journal of document batches, stored in memory-mapped segment files.
+ * <p/>
+ * Each record consists of a header (length, sequence number, state, document count) followed by
+ * the BSON documents of the batch. A record is forced to disk when it is appended. Completing a record
+ * only flips its state byte, and a segment file is deleted as soon as all its records are completed
+ * and it is no longer written to.
+ * <p/>
+ * A record that was torn by a crash is ignored when the journal is loaded. That is safe because
+ * {@link #append(List)} had not returned in that case, so the batch cannot have been committed.
+ */
+class BsonJournal {
+
+	/** Header: length (int), sequence (long), state (byte), document count (int). */
+	private static final int HEADER_SIZE = 4 + 8 + 1 + 4;
+
+	private static final int STATE_OFFSET = 4 + 8;
+
+	private static final byte PENDING = 0;
+
+	private static final byte COMPLETED = 1;
+
+	private static final String SUFFIX = ".journal";
+
+	private final File directory;
+
+	private final String name;
+
+	private final int segmentSize;
+
+	private final DBEncoder encoder;
+
+	private final SortedMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+	/** Location of all records that are not completed yet. */
+	private final Map<Long, RecordRef> pending = new HashMap<Long, RecordRef>();
+
+	private Segment current;
+
+	private long sequence;
+
+	/**
+	 * Opens the journal and loads the segment files that are left over from a previous run.
+	 *
+	 * @param directory Directory of the segment files.
+	 * @param name Name of the journal, used as prefix for the segment files.
+	 * @param segmentSize Size of a segment file in bytes.
+	 * @param encoder Encoder for appended documents.
+	 */
+	BsonJournal(File directory, final String name, int segmentSize, DBEncoder encoder) throws IOException {
+		this.directory = directory;
+		this.name = name;
+		this.segmentSize = segmentSize;
+		this.encoder = encoder;
+
+		if ( !directory.isDirectory() && !directory.mkdirs() ) {
+			throw new IOException("Cannot create journal directory: " + directory);
+		}
+
+		final File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String fileName) {
+				return fileName.startsWith(name + ".") && fileName.endsWith(SUFFIX);
+			}
+		});
+
+		for (File file: files) {
+			final String number = file.getName().substring(name.length() + 1, file.getName().length() - SUFFIX.length());
+			try {
+				final Segment segment = new Segment(Integer.parseInt(number), file, (int)file.length());
+				segments.put(segment.number, segment);
+			} catch (NumberFormatException e) {
+				// not a segment of this journal
+			}
+		}
+
+		for (Segment segment: new ArrayList<Segment>(segments.values())) {
+			segment.load();
+			if (segment.pendingRecords == 0) {
+				segment.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return Sequence numbers of all records that are not completed, in ascending order.
+	 */
+	synchronized List<Long> getPendingSequences() {
+		return new ArrayList<Long>( new TreeMap<Long, RecordRef>(pending).keySet() );
+	}
+
+	/**
+	 * @return The documents of a pending record.
+	 */
+	synchronized List<DBObject> read(long seq) {
+		final RecordRef ref = pending.get(seq);
+		if (ref == null) {
+			throw new IllegalArgumentException("No pending journal record: " + seq);
+		}
+		return ref.segment.readDocuments(ref.offset);
+	}
+
+	/**
+	 * Appends a batch of documents and forces it to disk.
+	 *
+	 * @return The sequence number of the new record.
+	 */
+	synchronized long append(List<DBObject> docs) throws IOException {
+		final OutputBuffer payload = new BasicOutputBuffer();
+		for (DBObject doc: docs) {
+			encoder.writeObject(payload, doc);
+		}
+		final int length = HEADER_SIZE + payload.size();
+
+		if ( current == null || current.position + length + 4 > current.buf.capacity() ) {
+			final int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+			final Segment segment = new Segment(number,
+				new File(directory, name + "." + number + SUFFIX), Math.max(segmentSize, length + 4));
+			segments.put(number, segment);
+			if (current != null && current.pendingRecords == 0) {
+				current.delete();
+			}
+			current = segment;
+		}
+
+		final long seq = ++sequence;
+		final MappedByteBuffer buf = current.buf;
+		final int offset = current.position;
+
+		buf.position(offset + 4);
+		buf.putLong(seq);
+		buf.put(PENDING);
+		buf.putInt(docs.size());
+		buf.put(payload.toByteArray());
+		buf.putInt(0);
+		// the length is written last, so a torn record is never read
+		buf.putInt(offset, length);
+		buf.force();
+
+		current.position += length;
+		current.pendingRecords++;
+		pending.put(seq, new RecordRef(current, offset));
+
+		return seq;
+	}
+
+	/**
+	 * Marks a record as completed. Unknown sequence numbers are ignored.
+	 */
+	synchronized void complete(long seq) {
+		final RecordRef ref = pending.remove(seq);
+		if (ref == null) {
+			return;
+		}
+
+		ref.segment.buf.put(ref.offset + STATE_OFFSET, COMPLETED);
+		ref.segment.buf.force();
+		ref.segment.pendingRecords--;
+
+		if (ref.segment.pendingRecords == 0 && ref.segment != current) {
+			ref.segment.delete();
+		}
+	}
+
+	/**
+	 * @return Sequence number of the last appended record.
+	 */
+	synchronized long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Makes sure that new records get a sequence number greater than the given one.
+	 */
+	synchronized void skipTo(long seq) {
+		sequence = Math.max(sequence, seq);
+	}
+
+	synchronized void close() {
+		for (Segment segment: new ArrayList<Segment>(segments.values())) {
+			if (segment.pendingRecords == 0) {
+				segment.delete();
+			} else {
+				segment.close();
+			}
+		}
+		segments.clear();
+		pending.clear();
+		current = null;
+	}
+
+	/** Location of a record. */
+	private static class RecordRef {
+
+		private final Segment segment;
+
+		private final int offset;
+
+		private RecordRef(Segment segment, int offset) {
+			this.segment = segment;
+			this.offset = offset;
+		}
+
+	}
+
+	/** A memory-mapped segment file. */
+	private class Segment {
+
+		private final int number;
+
+		private final File file;
+
+		private final RandomAccessFile raf;
+
+		private final MappedByteBuffer buf;
+
+		private int position;
+
+		private int pendingRecords;
+
+		private Segment(int number, File file, int size) throws IOException {
+			this.number = number;
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			this.buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			this.buf.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		private void load() {
+			while ( position + HEADER_SIZE <= buf.capacity() ) {
+				final int length = buf.getInt(position);
+				if ( length < HEADER_SIZE || position + length > buf.capacity() || !isComplete(position, length) ) {
+					break;
+				}
+
+				final long seq = buf.getLong(position + 4);
+				if ( buf.get(position + STATE_OFFSET) == PENDING ) {
+					pending.put(seq, new RecordRef(this, position));
+					pendingRecords++;
+				}
+				sequence = Math.max(sequence, seq);
+				position += length;
+			}
+		}
+
+		/** Checks that the documents of a record fill exactly the record. */
+		private boolean isComplete(int offset, int length) {
+			final int count = buf.getInt(offset + STATE_OFFSET + 1);
+			int pos = offset + HEADER_SIZE;
+			for (int i = 0; i < count; i++) {
+				if ( pos + 4 > offset + length ) {
+					return false;
+				}
+				final int size = buf.getInt(pos);
+				if (size <= 0) {
+					return false;
+				}
+				pos += size;
+			}
+			return pos == offset + length;
+		}
+
+		private List<DBObject> readDocuments(int offset) {
+			final int count = buf.getInt(offset + STATE_OFFSET + 1);
+			final List<DBObject> docs = new ArrayList<DBObject>(count);
+
+			int pos = offset + HEADER_SIZE;
+			for (int i = 0; i < count; i++) {
+				final byte[] bytes = new byte[buf.getInt(pos)];
+				buf.position(pos);
+				buf.get(bytes);
+				docs.add( new LazyDBObject(bytes, new LazyDBCallback(null)) );
+				pos += bytes.length;
+			}
+
+			return docs;
+		}
+
+		private void close() {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// nothing we can do
+			}
+		}
+
+		private void delete() {
+			close();
+			segments.remove(number);
+			if ( !file.delete() ) {
+				file.deleteOnExit();
+			}
+		}
+
+	}
+
+}
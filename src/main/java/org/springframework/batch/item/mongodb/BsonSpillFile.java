@@ -0,0 +1,137 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.DBEncoder;
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.OutputBuffer;
+
+/**
+ * A temporary file that holds a sequence of BSON documents.
+ * <p/>
+ * Documents are appended one after the other. After writing is finished, the file is memory-mapped
+ * and read back in batches, so only one batch of documents is on the heap at a time.
+ * The file is deleted when it is closed.
+ */
+class BsonSpillFile {
+
+	/** Size of the memory-mapped window used for reading. */
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final DBEncoder encoder;
+
+	private OutputStream out;
+
+	private long length;
+
+	private int count;
+
+	private long readPosition;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	BsonSpillFile(File directory, DBEncoder encoder) throws IOException {
+		this.file = File.createTempFile("mongodb-spill-", ".bson", directory);
+		this.raf = new RandomAccessFile(file, "rw");
+		this.encoder = encoder;
+		this.out = new BufferedOutputStream( Channels.newOutputStream(raf.getChannel()) );
+	}
+
+	/**
+	 * Appends a document to the file.
+	 */
+	void append(DBObject doc) throws IOException {
+		final OutputBuffer buf = new BasicOutputBuffer();
+		length += encoder.writeObject(buf, doc);
+		buf.pipe(out);
+		count++;
+	}
+
+	/**
+	 * @return Number of documents in this file.
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Reads the next documents from the file. Once reading has started, no more documents can be appended.
+	 *
+	 * @param maxDocuments Maximum number of documents to read.
+	 * @return The documents or an empty list if all documents have been read.
+	 */
+	List<DBObject> read(int maxDocuments) throws IOException {
+		if (out != null) {
+			out.flush();
+			out = null;
+		}
+
+		final List<DBObject> docs = new ArrayList<DBObject>();
+
+		while ( docs.size() < maxDocuments && readPosition < length ) {
+			int offset = ensureMapped(readPosition, 4);
+			final int size = window.getInt(offset);
+			offset = ensureMapped(readPosition, size);
+
+			final byte[] bytes = new byte[size];
+			window.position(offset);
+			window.get(bytes);
+			docs.add( new LazyDBObject(bytes, new LazyDBCallback(null)) );
+
+			readPosition += size;
+		}
+
+		return docs;
+	}
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	void close() {
+		window = null;
+		try {
+			raf.close();
+		} catch (IOException e) {
+			// ignore, the file is deleted anyway
+		}
+		if ( !file.delete() ) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Maps a window of the file that contains the given range.
+	 *
+	 * @return Offset of the position inside the window.
+	 */
+	private int ensureMapped(long position, int size) throws IOException {
+		if ( window == null || position < windowStart || position + size > windowStart + window.limit() ) {
+			windowStart = position;
+			window = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position,
+				Math.min(length - position, Math.max(WINDOW_SIZE, size)));
+			window.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return (int)(position - windowStart);
+	}
+
+}
@@ -0,0 +1,387 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import com.mongodb.DBRefBase;
+import com.mongodb.util.JSON;
+
+/**
+ * Encodes documents as compact extended JSON straight into a reusable byte array, in the notation of 
+ * {@link JSON#serialize(Object)}, so the output can be read back with {@link JSON#parse(String)}.
+ * <p/>
+ * Strings are encoded to UTF-8 character by character and numbers, dates and ids digit by digit, 
+ * so no intermediate strings are created for the common types. An instance is not thread-safe.
+ */
+class ExtendedJsonEncoder {
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	
+	private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+	
+	private final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+	
+	private byte[] buf;
+	
+	private int length;
+	
+	ExtendedJsonEncoder(int initialCapacity) {
+		buf = new byte[initialCapacity];
+	}
+	
+	/**
+	 * @return The buffer with the encoded bytes. It is replaced when it grows.
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+	
+	/**
+	 * @return Number of encoded bytes in the buffer.
+	 */
+	int length() {
+		return length;
+	}
+	
+	/**
+	 * Discards the encoded bytes.
+	 */
+	void reset() {
+		length = 0;
+	}
+	
+	/**
+	 * Appends a document followed by a newline.
+	 */
+	void writeLine(BSONObject doc) {
+		writeDocument(doc);
+		writeByte('\n');
+	}
+	
+	void writeDocument(BSONObject doc) {
+		writeByte('{');
+		boolean first = true;
+		for (String key: doc.keySet()) {
+			if (!first) {
+				writeByte(',');
+			}
+			first = false;
+			writeString(key);
+			writeByte(':');
+			writeValue(doc.get(key));
+		}
+		writeByte('}');
+	}
+	
+	// private methods .....................................................
+	
+	private void writeValue(Object value) {
+		if (value == null) {
+			writeAscii("null");
+		} else if (value instanceof String) {
+			writeString((String)value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			writeLong( ((Number)value).longValue() );
+		} else if (value instanceof Number) {
+			writeAscii( value.toString() );
+		} else if (value instanceof Boolean) {
+			writeAscii( ((Boolean)value).booleanValue() ? "true" : "false" );
+		} else if (value instanceof ObjectId) {
+			writeAscii("{\"$oid\":\"");
+			writeHex( ((ObjectId)value).toByteArray() );
+			writeAscii("\"}");
+		} else if (value instanceof Date) {
+			writeAscii("{\"$date\":\"");
+			writeDate( (Date)value );
+			writeAscii("\"}");
+		} else if (value instanceof BSONObject) {
+			writeDocument( (BSONObject)value );
+		} else if (value instanceof Map) {
+			writeMap( (Map<?, ?>)value );
+		} else if (value instanceof Iterable) {
+			writeByte('[');
+			boolean first = true;
+			for (Object element: (Iterable<?>)value) {
+				if (!first) {
+					writeByte(',');
+				}
+				first = false;
+				writeValue(element);
+			}
+			writeByte(']');
+		} else if (value instanceof Object[]) {
+			final Object[] array = (Object[])value;
+			writeByte('[');
+			for (int i = 0; i < array.length; i++) {
+				if (i > 0) {
+					writeByte(',');
+				}
+				writeValue(array[i]);
+			}
+			writeByte(']');
+		} else if (value instanceof byte[]) {
+			writeBinary(0, (byte[])value);
+		} else if (value instanceof Binary) {
+			writeBinary( ((Binary)value).getType(), ((Binary)value).getData() );
+		} else if (value instanceof UUID) {
+			writeAscii("{\"$uuid\":\"");
+			writeAscii( value.toString() );
+			writeAscii("\"}");
+		} else if (value instanceof Pattern) {
+			writeAscii("{\"$regex\":");
+			writeString( ((Pattern)value).pattern() );
+			writeAscii(",\"$options\":");
+			writeString( BSON.regexFlags(((Pattern)value).flags()) );
+			writeByte('}');
+		} else if (value instanceof BSONTimestamp) {
+			writeAscii("{\"$ts\":");
+			writeLong( ((BSONTimestamp)value).getTime() );
+			writeAscii(",\"$inc\":");
+			writeLong( ((BSONTimestamp)value).getInc() );
+			writeByte('}');
+		} else if (value instanceof CodeWScope) {
+			writeAscii("{\"$code\":");
+			writeString( ((CodeWScope)value).getCode() );
+			writeAscii(",\"$scope\":");
+			writeDocument( ((CodeWScope)value).getScope() );
+			writeByte('}');
+		} else if (value instanceof Code) {
+			writeAscii("{\"$code\":");
+			writeString( ((Code)value).getCode() );
+			writeByte('}');
+		} else if (value instanceof DBRefBase) {
+			writeAscii("{\"$ref\":");
+			writeString( ((DBRefBase)value).getRef() );
+			writeAscii(",\"$id\":");
+			writeValue( ((DBRefBase)value).getId() );
+			writeByte('}');
+		} else if (value instanceof Symbol) {
+			writeString( ((Symbol)value).getSymbol() );
+		} else if (value instanceof MinKey) {
+			writeAscii("{\"$minKey\":1}");
+		} else if (value instanceof MaxKey) {
+			writeAscii("{\"$maxKey\":1}");
+		} else {
+			// rare types are left to the driver
+			writeUtf8( JSON.serialize(value) );
+		}
+	}
+	
+	private void writeMap(Map<?, ?> map) {
+		writeByte('{');
+		boolean first = true;
+		for (Map.Entry<?, ?> entry: map.entrySet()) {
+			if (!first) {
+				writeByte(',');
+			}
+			first = false;
+			writeString( String.valueOf(entry.getKey()) );
+			writeByte(':');
+			writeValue( entry.getValue() );
+		}
+		writeByte('}');
+	}
+	
+	/**
+	 * Writes a quoted and escaped string.
+	 */
+	private void writeString(String s) {
+		ensureCapacity(s.length() + 2);
+		buf[length++] = '"';
+		
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			
+			if (c == '"' || c == '\\') {
+				writeByte('\\');
+				writeByte(c);
+			} else if (c < 0x20) {
+				switch (c) {
+				case '\n': writeAscii("\\n"); break;
+				case '\r': writeAscii("\\r"); break;
+				case '\t': writeAscii("\\t"); break;
+				case '\b': writeAscii("\\b"); break;
+				case '\f': writeAscii("\\f"); break;
+				default:
+					writeAscii("\\u00");
+					writeByte( HEX[c >> 4] );
+					writeByte( HEX[c & 0xf] );
+				}
+			} else if (c < 0x80) {
+				writeByte(c);
+			} else {
+				i = writeUtf8Char(s, i);
+			}
+		}
+		
+		writeByte('"');
+	}
+	
+	/**
+	 * Writes a string as UTF-8 without quotes and escapes.
+	 */
+	private void writeUtf8(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				writeByte(c);
+			} else {
+				i = writeUtf8Char(s, i);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the non-ASCII character at the given index as UTF-8.
+	 * 
+	 * @return The index of the last char consumed.
+	 */
+	private int writeUtf8Char(String s, int i) {
+		final char c = s.charAt(i);
+		ensureCapacity(4);
+		
+		if (c < 0x800) {
+			buf[length++] = (byte)(0xc0 | (c >> 6));
+			buf[length++] = (byte)(0x80 | (c & 0x3f));
+		} else if ( Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)) ) {
+			final int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			buf[length++] = (byte)(0xf0 | (cp >> 18));
+			buf[length++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+			buf[length++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+			buf[length++] = (byte)(0x80 | (cp & 0x3f));
+			return i + 1;
+		} else if ( c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE ) {
+			// unpaired surrogate
+			buf[length++] = '?';
+		} else {
+			buf[length++] = (byte)(0xe0 | (c >> 12));
+			buf[length++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			buf[length++] = (byte)(0x80 | (c & 0x3f));
+		}
+		
+		return i;
+	}
+	
+	private void writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			writeAscii("-9223372036854775808");
+			return;
+		}
+		
+		ensureCapacity(20);
+		if (value < 0) {
+			buf[length++] = '-';
+			value = -value;
+		}
+		
+		final int start = length;
+		do {
+			buf[length++] = (byte)('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		
+		// digits were written in reverse order
+		for (int i = start, j = length - 1; i < j; i++, j--) {
+			final byte b = buf[i];
+			buf[i] = buf[j];
+			buf[j] = b;
+		}
+	}
+	
+	/**
+	 * Writes a date as <code>yyyy-MM-dd'T'HH:mm:ss.SSS'Z'</code> in UTC.
+	 */
+	private void writeDate(Date date) {
+		calendar.setTimeInMillis(date.getTime());
+		writeDigits(calendar.get(Calendar.YEAR), 4);
+		writeByte('-');
+		writeDigits(calendar.get(Calendar.MONTH) + 1, 2);
+		writeByte('-');
+		writeDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+		writeByte('T');
+		writeDigits(calendar.get(Calendar.HOUR_OF_DAY), 2);
+		writeByte(':');
+		writeDigits(calendar.get(Calendar.MINUTE), 2);
+		writeByte(':');
+		writeDigits(calendar.get(Calendar.SECOND), 2);
+		writeByte('.');
+		writeDigits(calendar.get(Calendar.MILLISECOND), 3);
+		writeByte('Z');
+	}
+	
+	private void writeDigits(int value, int digits) {
+		ensureCapacity(digits);
+		for (int i = digits - 1; i >= 0; i--) {
+			buf[length + i] = (byte)('0' + value % 10);
+			value /= 10;
+		}
+		length += digits;
+	}
+	
+	private void writeHex(byte[] bytes) {
+		ensureCapacity(bytes.length * 2);
+		for (byte b: bytes) {
+			buf[length++] = HEX[(b >> 4) & 0xf];
+			buf[length++] = HEX[b & 0xf];
+		}
+	}
+	
+	private void writeBinary(int type, byte[] data) {
+		writeAscii("{\"$binary\":\"");
+		ensureCapacity((data.length + 2) / 3 * 4);
+		
+		for (int i = 0; i < data.length; i += 3) {
+			final int remaining = data.length - i;
+			final int bits = (data[i] & 0xff) << 16 
+				| (remaining > 1 ? (data[i + 1] & 0xff) << 8 : 0) 
+				| (remaining > 2 ? data[i + 2] & 0xff : 0);
+			buf[length++] = BASE64[bits >> 18];
+			buf[length++] = BASE64[(bits >> 12) & 0x3f];
+			buf[length++] = remaining > 1 ? BASE64[(bits >> 6) & 0x3f] : (byte)'=';
+			buf[length++] = remaining > 2 ? BASE64[bits & 0x3f] : (byte)'=';
+		}
+		
+		writeAscii("\",\"$type\":");
+		writeLong(type);
+		writeByte('}');
+	}
+	
+	private void writeAscii(String s) {
+		ensureCapacity(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			buf[length++] = (byte)s.charAt(i);
+		}
+	}
+	
+	private void writeByte(int b) {
+		if (length == buf.length) {
+			ensureCapacity(1);
+		}
+		buf[length++] = (byte)b;
+	}
+	
+	private void ensureCapacity(int n) {
+		if (length + n > buf.length) {
+			final byte[] grown = new byte[Math.max(buf.length * 2, length + n)];
+			System.arraycopy(buf, 0, grown, 0, length);
+			buf = grown;
+		}
+	}
+	
+}
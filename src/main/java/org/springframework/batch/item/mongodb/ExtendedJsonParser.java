@@ -0,0 +1,528 @@
+package org.springframework.batch.item.mongodb;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+
+/**
+ * Parses JSON documents straight from UTF-8 bytes, e.g. from a memory-mapped file, in the notation 
+ * of {@link com.mongodb.util.JSON} and of {@link ExtendedJsonEncoder}.
+ * <p/>
+ * Field names are looked up in a cache by their bytes, so the same names on every line are not decoded 
+ * again. String values are decoded into a reusable char buffer and integers are parsed digit by digit. 
+ * Only floating point numbers are handed to the JDK as strings. An instance is not thread-safe.
+ */
+class ExtendedJsonParser {
+
+	/** Number of slots of the field name cache. */
+	private static final int KEY_CACHE_SIZE = 1024;
+	
+	/** Maximum length of a cached field name in bytes. */
+	private static final int MAX_CACHED_KEY_LENGTH = 64;
+	
+	private final String[] keys = new String[KEY_CACHE_SIZE];
+	
+	private final byte[][] keyBytes = new byte[KEY_CACHE_SIZE][];
+	
+	private final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+	
+	private char[] chars = new char[256];
+	
+	private ByteBuffer buf;
+	
+	private int pos;
+	
+	private int limit;
+	
+	/**
+	 * Parses a document from the bytes between <code>start</code> and <code>end</code>.
+	 * 
+	 * @throws IllegalArgumentException if the bytes are not a single JSON document.
+	 */
+	DBObject parse(ByteBuffer buffer, int start, int end) {
+		this.buf = buffer;
+		this.pos = start;
+		this.limit = end;
+		
+		skipWhitespace();
+		expect('{');
+		final Object doc = parseObject();
+		skipWhitespace();
+		if (pos < limit) {
+			throw error("Unexpected content after document");
+		}
+		if ( !(doc instanceof DBObject) ) {
+			throw error("Line is not a document");
+		}
+		
+		return (DBObject)doc;
+	}
+	
+	// private methods .....................................................
+	
+	private Object parseValue() {
+		skipWhitespace();
+		if (pos >= limit) {
+			throw error("Unexpected end of line");
+		}
+		
+		final byte b = buf.get(pos);
+		switch (b) {
+		case '{':
+			pos++;
+			return parseObject();
+		case '[':
+			pos++;
+			return parseArray();
+		case '"':
+		case '\'':
+			pos++;
+			return parseString(b);
+		case 't':
+			expectLiteral("true");
+			return Boolean.TRUE;
+		case 'f':
+			expectLiteral("false");
+			return Boolean.FALSE;
+		case 'n':
+			expectLiteral("null");
+			return null;
+		default:
+			if (b == '-' || (b >= '0' && b <= '9')) {
+				return parseNumber();
+			}
+			throw error("Unexpected character '" + (char)b + "'");
+		}
+	}
+	
+	/**
+	 * Parses the fields of an object after the opening brace.
+	 * 
+	 * @return The document or the value of an extended JSON notation like <code>$oid</code>.
+	 */
+	private Object parseObject() {
+		final BasicDBObject doc = new BasicDBObject();
+		
+		skipWhitespace();
+		if ( peek() == '}' ) {
+			pos++;
+			return doc;
+		}
+		
+		while (true) {
+			skipWhitespace();
+			final byte quote = peek();
+			if (quote != '"' && quote != '\'') {
+				throw error("Field name expected");
+			}
+			pos++;
+			final String key = parseKey(quote);
+			skipWhitespace();
+			expect(':');
+			doc.put(key, parseValue());
+			skipWhitespace();
+			
+			final byte b = next();
+			if (b == '}') {
+				break;
+			}
+			if (b != ',') {
+				throw error("',' or '}' expected");
+			}
+		}
+		
+		final String first = doc.keySet().iterator().next();
+		return first.length() > 0 && first.charAt(0) == '$' ? convert(doc) : doc;
+	}
+	
+	private BasicDBList parseArray() {
+		final BasicDBList list = new BasicDBList();
+		
+		skipWhitespace();
+		if ( peek() == ']' ) {
+			pos++;
+			return list;
+		}
+		
+		while (true) {
+			list.add( parseValue() );
+			skipWhitespace();
+			
+			final byte b = next();
+			if (b == ']') {
+				break;
+			}
+			if (b != ',') {
+				throw error("',' or ']' expected");
+			}
+		}
+		
+		return list;
+	}
+	
+	/**
+	 * Parses a field name, using the cache for short names without escapes and non-ASCII characters.
+	 */
+	private String parseKey(byte quote) {
+		final int start = pos;
+		int hash = 0x811c9dc5;
+		
+		for (int i = start; i < limit && i - start <= MAX_CACHED_KEY_LENGTH; i++) {
+			final byte b = buf.get(i);
+			if (b == quote) {
+				final int slot = (hash & 0x7fffffff) % KEY_CACHE_SIZE;
+				final int length = i - start;
+				pos = i + 1;
+				
+				if ( !matches(keyBytes[slot], start, length) ) {
+					final byte[] bytes = new byte[length];
+					final char[] name = new char[length];
+					for (int j = 0; j < length; j++) {
+						bytes[j] = buf.get(start + j);
+						name[j] = (char)bytes[j];
+					}
+					keyBytes[slot] = bytes;
+					keys[slot] = new String(name);
+				}
+				return keys[slot];
+			}
+			if (b == '\\' || b < 0) {
+				break;
+			}
+			hash = (hash ^ b) * 0x01000193;
+		}
+		
+		pos = start;
+		return parseString(quote);
+	}
+	
+	private boolean matches(byte[] bytes, int start, int length) {
+		if (bytes == null || bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ( bytes[i] != buf.get(start + i) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses a string after the opening quote and decodes it from UTF-8.
+	 */
+	private String parseString(byte quote) {
+		int n = 0;
+		
+		while (true) {
+			if (pos >= limit) {
+				throw error("Unterminated string");
+			}
+			if (n + 2 > chars.length) {
+				final char[] grown = new char[chars.length * 2];
+				System.arraycopy(chars, 0, grown, 0, n);
+				chars = grown;
+			}
+			
+			final int b = buf.get(pos++);
+			if (b == quote) {
+				return new String(chars, 0, n);
+			} else if (b == '\\') {
+				chars[n++] = parseEscape();
+			} else if (b >= 0) {
+				chars[n++] = (char)b;
+			} else if ((b & 0xe0) == 0xc0) {
+				chars[n++] = (char)(((b & 0x1f) << 6) | continuation());
+			} else if ((b & 0xf0) == 0xe0) {
+				chars[n++] = (char)(((b & 0x0f) << 12) | (continuation() << 6) | continuation());
+			} else if ((b & 0xf8) == 0xf0) {
+				final int cp = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+				chars[n++] = (char)(Character.MIN_HIGH_SURROGATE + ((cp - 0x10000) >> 10));
+				chars[n++] = (char)(Character.MIN_LOW_SURROGATE + (cp & 0x3ff));
+			} else {
+				throw error("Invalid UTF-8 sequence");
+			}
+		}
+	}
+	
+	private int continuation() {
+		if (pos >= limit) {
+			throw error("Invalid UTF-8 sequence");
+		}
+		final int b = buf.get(pos++);
+		if ((b & 0xc0) != 0x80) {
+			throw error("Invalid UTF-8 sequence");
+		}
+		return b & 0x3f;
+	}
+	
+	private char parseEscape() {
+		final byte b = next();
+		switch (b) {
+		case 'n': return '\n';
+		case 'r': return '\r';
+		case 't': return '\t';
+		case 'b': return '\b';
+		case 'f': return '\f';
+		case 'u':
+			int c = 0;
+			for (int i = 0; i < 4; i++) {
+				final int digit = Character.digit(next(), 16);
+				if (digit < 0) {
+					throw error("Invalid unicode escape");
+				}
+				c = (c << 4) | digit;
+			}
+			return (char)c;
+		default:
+			// \" \' \\ \/
+			return (char)b;
+		}
+	}
+	
+	/**
+	 * Parses a number as <code>Integer</code> or <code>Long</code> if it is integral and as <code>Double</code> 
+	 * otherwise, like {@link com.mongodb.util.JSON}.
+	 */
+	private Object parseNumber() {
+		final int start = pos;
+		final boolean negative = peek() == '-';
+		if (negative) {
+			pos++;
+		}
+		
+		// accumulated negatively like Long.parseLong, since the range of negative values is larger
+		final long min = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long value = 0;
+		boolean overflow = false;
+		int digits = 0;
+		while (pos < limit) {
+			final byte b = buf.get(pos);
+			if (b < '0' || b > '9') {
+				break;
+			}
+			final int digit = b - '0';
+			if ( overflow || value < min / 10 || value * 10 < min + digit ) {
+				overflow = true;
+			} else {
+				value = value * 10 - digit;
+			}
+			digits++;
+			pos++;
+		}
+		if (digits == 0) {
+			throw error("Invalid number");
+		}
+		
+		final byte b = pos < limit ? buf.get(pos) : 0;
+		if (overflow || b == '.' || b == 'e' || b == 'E') {
+			while (pos < limit) {
+				final byte c = buf.get(pos);
+				if ( (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' ) {
+					pos++;
+				} else {
+					break;
+				}
+			}
+			final char[] number = new char[pos - start];
+			for (int i = 0; i < number.length; i++) {
+				number[i] = (char)buf.get(start + i);
+			}
+			try {
+				return Double.parseDouble( new String(number) );
+			} catch (NumberFormatException e) {
+				throw error("Invalid number");
+			}
+		}
+		
+		if (!negative) {
+			value = -value;
+		}
+		return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object)(int)value : (Object)value;
+	}
+	
+	/**
+	 * Converts the extended JSON notations for BSON types.
+	 */
+	private Object convert(BasicDBObject doc) {
+		final int size = doc.size();
+		
+		if (size == 1 && doc.get("$oid") instanceof String) {
+			return new ObjectId( (String)doc.get("$oid") );
+		} else if (size == 1 && doc.containsField("$date")) {
+			final Object date = doc.get("$date");
+			if (date instanceof Number) {
+				return new Date( ((Number)date).longValue() );
+			} else if (date instanceof String) {
+				return parseDate( (String)date );
+			}
+		} else if (size == 1 && doc.get("$numberLong") instanceof String) {
+			try {
+				return Long.valueOf( (String)doc.get("$numberLong") );
+			} catch (NumberFormatException e) {
+				throw error("Invalid $numberLong");
+			}
+		} else if (doc.get("$regex") instanceof String) {
+			final Object options = doc.get("$options");
+			return Pattern.compile( (String)doc.get("$regex"), 
+				options instanceof String ? BSON.regexFlags((String)options) : 0 );
+		} else if (size == 2 && doc.get("$ts") instanceof Number && doc.get("$inc") instanceof Number) {
+			return new BSONTimestamp( ((Number)doc.get("$ts")).intValue(), ((Number)doc.get("$inc")).intValue() );
+		} else if (doc.get("$code") instanceof String) {
+			return doc.get("$scope") instanceof BSONObject
+				? new CodeWScope( (String)doc.get("$code"), (BSONObject)doc.get("$scope") )
+				: new Code( (String)doc.get("$code") );
+		} else if (size == 2 && doc.get("$ref") instanceof String && doc.containsField("$id")) {
+			return new DBRef( null, (String)doc.get("$ref"), doc.get("$id") );
+		} else if (size == 1 && doc.containsField("$minKey")) {
+			return new MinKey();
+		} else if (size == 1 && doc.containsField("$maxKey")) {
+			return new MaxKey();
+		} else if (size == 1 && doc.get("$uuid") instanceof String) {
+			return UUID.fromString( (String)doc.get("$uuid") );
+		} else if (doc.get("$binary") instanceof String) {
+			final byte[] data = decodeBase64( (String)doc.get("$binary") );
+			final Object type = doc.get("$type");
+			final byte subtype = type instanceof Number ? ((Number)type).byteValue() : 0;
+			return subtype == 0 ? (Object)data : new Binary(subtype, data);
+		}
+		
+		return doc;
+	}
+	
+	/**
+	 * Parses a date in the format <code>yyyy-MM-dd'T'HH:mm:ss[.SSS]Z</code> in UTC.
+	 */
+	private Date parseDate(String s) {
+		if ( s.length() < 20 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T' 
+				|| s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(s.length() - 1) != 'Z' ) {
+			throw error("Invalid $date: " + s);
+		}
+		
+		calendar.clear();
+		calendar.set( digits(s, 0, 4), digits(s, 5, 2) - 1, digits(s, 8, 2), 
+			digits(s, 11, 2), digits(s, 14, 2), digits(s, 17, 2) );
+		if ( s.length() == 24 && s.charAt(19) == '.' ) {
+			calendar.set( Calendar.MILLISECOND, digits(s, 20, 3) );
+		} else if ( s.length() != 20 ) {
+			throw error("Invalid $date: " + s);
+		}
+		
+		return calendar.getTime();
+	}
+	
+	private int digits(String s, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			final char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw error("Invalid $date: " + s);
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+	
+	private byte[] decodeBase64(String s) {
+		int padding = 0;
+		while ( padding < 2 && s.length() > padding && s.charAt(s.length() - 1 - padding) == '=' ) {
+			padding++;
+		}
+		if (s.length() % 4 != 0) {
+			throw error("Invalid $binary");
+		}
+		
+		final byte[] data = new byte[s.length() / 4 * 3 - padding];
+		int n = 0;
+		for (int i = 0; i < s.length(); i += 4) {
+			int bits = 0;
+			for (int j = 0; j < 4; j++) {
+				bits = (bits << 6) | base64Value(s.charAt(i + j));
+			}
+			// only the last group is padded
+			for (int shift = 16; shift >= 0 && n < data.length; shift -= 8) {
+				data[n++] = (byte)(bits >> shift);
+			}
+		}
+		
+		return data;
+	}
+	
+	private int base64Value(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A';
+		} else if (c >= 'a' && c <= 'z') {
+			return c - 'a' + 26;
+		} else if (c >= '0' && c <= '9') {
+			return c - '0' + 52;
+		} else if (c == '+') {
+			return 62;
+		} else if (c == '/') {
+			return 63;
+		} else if (c == '=') {
+			return 0;
+		}
+		throw error("Invalid $binary");
+	}
+	
+	private void skipWhitespace() {
+		while (pos < limit) {
+			final byte b = buf.get(pos);
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				return;
+			}
+			pos++;
+		}
+	}
+	
+	private byte peek() {
+		if (pos >= limit) {
+			throw error("Unexpected end of line");
+		}
+		return buf.get(pos);
+	}
+	
+	private byte next() {
+		final byte b = peek();
+		pos++;
+		return b;
+	}
+	
+	private void expect(char c) {
+		if ( next() != c ) {
+			throw error("'" + c + "' expected");
+		}
+	}
+	
+	private void expectLiteral(String literal) {
+		for (int i = 0; i < literal.length(); i++) {
+			if ( pos >= limit || buf.get(pos++) != literal.charAt(i) ) {
+				throw error("'" + literal + "' expected");
+			}
+		}
+	}
+	
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at byte " + pos);
+	}
+	
+}
@@ -0,0 +1,82 @@
+package org.springframework.batch.item.mongodb;
+
+/**
+ * A map with primitive <code>long</code> keys and open addressing, which needs no key objects and no entries.
+ * Values must not be <code>null</code>. The map is not synchronized.
+ * 
+ * @param <V> Type of the values.
+ */
+class LongObjectMap<V> {
+
+	private long[] keys;
+	
+	private Object[] values;
+	
+	private int size;
+	
+	LongObjectMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new Object[capacity];
+	}
+	
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		final int mask = keys.length - 1;
+		for (int i = index(key, mask); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V)values[i];
+			}
+		}
+		return null;
+	}
+	
+	void put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported");
+		}
+		if ( (size + 1) * 2 > keys.length ) {
+			resize();
+		}
+		
+		final int mask = keys.length - 1;
+		int i = index(key, mask);
+		while ( values[i] != null && keys[i] != key ) {
+			i = (i + 1) & mask;
+		}
+		if (values[i] == null) {
+			size++;
+		}
+		keys[i] = key;
+		values[i] = value;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void resize() {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		size = 0;
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				put(oldKeys[i], (V)oldValues[i]);
+			}
+		}
+	}
+	
+	private static int index(long key, int mask) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+	
+}
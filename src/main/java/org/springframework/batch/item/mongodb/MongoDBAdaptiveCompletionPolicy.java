@@ -0,0 +1,126 @@
+package org.springframework.batch.item.mongodb;
+
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * A completion policy that adapts the commit interval to the write performance of MongoDB.
+ * <p/>
+ * Register this policy as {@link MongoDBInsertListener} of a {@link MongoDBItemWriter} and as
+ * <code>chunk-completion-policy</code> of the step. With a {@link #targetLatency}, the chunk size is computed 
+ * after each insert from the smoothed latency per document, so that the insert latency approaches the target. 
+ * Since the size does not depend on the previous sizes, it settles instead of overshooting. With a 
+ * {@link #targetThroughput}, the chunk size is scaled by the square root of the ratio of the target rate to the 
+ * smoothed measured rate, which damps the correction. A single adjustment never more than halves or doubles 
+ * the chunk size.
+ * <p/>
+ * Required parameters are (one of):
+ * <ul>
+ * <li>{@link #targetLatency}: Target duration of an insert in milliseconds.</li>
+ * <li>{@link #targetThroughput}: Target number of inserted documents per second.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #minChunkSize}: Lower bound of the chunk size. Defaults to 1.</li>
+ * <li>{@link #maxChunkSize}: Upper bound of the chunk size. Defaults to 10000.</li>
+ * <li>{@link #initialChunkSize}: Chunk size before the first measurement. Defaults to 
+ * 		{@link SimpleCompletionPolicy#DEFAULT_CHUNK_SIZE}.</li>
+ * </ul>
+ */
+public class MongoDBAdaptiveCompletionPolicy extends SimpleCompletionPolicy 
+	implements MongoDBInsertListener, InitializingBean {
+
+	private static final int DEFAULT_MIN_CHUNK_SIZE = 1;
+	
+	private static final int DEFAULT_MAX_CHUNK_SIZE = 10000;
+	
+	/** Weight of a new measurement in the moving average. */
+	private static final double SMOOTHING = 0.3;
+	
+	// configurable attributes ......................................
+	
+	/** Target duration of an insert in milliseconds. */
+	protected long targetLatency;
+	
+	/** Target number of inserted documents per second. */
+	protected long targetThroughput;
+	
+	protected int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+	
+	protected int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+	
+	protected int initialChunkSize = DEFAULT_CHUNK_SIZE;
+	
+	// internally used attributes ......................................
+	
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	
+	/** Moving average of the measured latency per document (ms) or throughput (documents/s). */
+	private double average = -1;
+	
+	// public interface .........................................
+	
+	@Override
+	public synchronized void afterInsert(String databaseName, String collectionName, int count, long nanos) {
+		if (count == 0 || nanos <= 0) {
+			return;
+		}
+		
+		final double measured = targetLatency > 0 
+			? nanos / 1000000.0 / count
+			: count * 1000000000.0 / nanos;
+		average = average < 0 ? measured : SMOOTHING * measured + (1 - SMOOTHING) * average;
+		
+		// a longer latency asks for smaller chunks, a lower throughput for bigger ones
+		final double size = targetLatency > 0 
+			? targetLatency / average 
+			: chunkSize * Math.sqrt(targetThroughput / average);
+		
+		setChunkSize( (int)Math.round( Math.max(chunkSize * 0.5, Math.min(chunkSize * 2.0, size)) ) );
+	}
+	
+	@Override
+	public synchronized void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(minChunkSize, Math.min(maxChunkSize, chunkSize));
+		super.setChunkSize(this.chunkSize);
+	}
+	
+	/**
+	 * @return The current chunk size.
+	 */
+	public synchronized int getChunkSize() {
+		return chunkSize;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setTargetLatency(long targetLatency) {
+		this.targetLatency = targetLatency;
+	}
+
+	public void setTargetThroughput(long targetThroughput) {
+		this.targetThroughput = targetThroughput;
+	}
+
+	public void setMinChunkSize(int minChunkSize) {
+		this.minChunkSize = minChunkSize;
+	}
+
+	public void setMaxChunkSize(int maxChunkSize) {
+		this.maxChunkSize = maxChunkSize;
+	}
+
+	public void setInitialChunkSize(int initialChunkSize) {
+		this.initialChunkSize = initialChunkSize;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.isTrue( targetLatency > 0 ^ targetThroughput > 0, "Either a target latency or a target throughput is required" );
+		Assert.isTrue( minChunkSize > 0 && minChunkSize <= maxChunkSize, "Invalid chunk size bounds" );
+		setChunkSize(initialChunkSize);
+	}
+	
+}
@@ -0,0 +1,282 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MapReduceCommand;
+import com.mongodb.Mongo;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * This tasklet reshapes a collection into another one on the server, so no document is moved through the JVM.
+ * <p/>
+ * It either runs an aggregation {@link #pipeline} with a final <code>$out</code> stage into the 
+ * {@link #outputCollection} (MongoDB 2.6 or later), or a map-reduce with {@link #map} and {@link #reduce} 
+ * functions that replaces the output collection. The command runs on a thread of the {@link #taskExecutor}. 
+ * While it is running, the tasklet polls every {@link #pollInterval} milliseconds, stores the progress reported by 
+ * the server (see <code>currentOp</code>) in the {@link StepExecution}'s execution context under the key 
+ * <code>progress</code> and returns {@link RepeatStatus#CONTINUABLE}. When the command has finished, the number 
+ * of input documents is reported as read count and the number of output documents as write count. The running
+ * command is kept in the {@link ChunkContext}, so one tasklet may serve concurrent step executions.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #collection}: Name of the input collection.</li>
+ * <li>{@link #outputCollection}: Name of the output collection.</li>
+ * <li>Either {@link #pipeline} or {@link #map} and {@link #reduce}.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #query}: a query in JSON notation that restricts the input of a map-reduce.</li>
+ * <li>{@link #finalizeFunction}: a finalize function of a map-reduce.</li>
+ * <li>{@link #taskExecutor}: runs the command. Defaults to a {@link SimpleAsyncTaskExecutor}.</li>
+ * <li>{@link #pollInterval}: Milliseconds between polls. Defaults to 1000.</li>
+ * </ul>
+ */
+public class MongoDBAggregationTasklet implements Tasklet, InitializingBean {
+
+	/** By default, the progress of the command is polled every second. */
+	private static final long DEFAULT_POLL_INTERVAL = 1000;
+	
+	/** Key of the progress in the execution context. */
+	private static final String PROGRESS = "progress";
+	
+	/** Key of the running command in the chunk context. */
+	private static final String COMMAND = MongoDBAggregationTasklet.class.getName() + ".command";
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the input collection. */
+	protected String collection;
+	
+	/** Name of the output collection. */
+	protected String outputCollection;
+	
+	/** Aggregation pipeline as JSON array without the <code>$out</code> stage. */
+	protected String pipeline;
+	
+	/** Map function of a map-reduce. */
+	protected String map;
+	
+	/** Reduce function of a map-reduce. */
+	protected String reduce;
+	
+	/** Finalize function of a map-reduce (optional). */
+	protected String finalizeFunction;
+	
+	/** Query in JSON notation that restricts the input of a map-reduce (optional). */
+	protected String query;
+	
+	/** Runs the command. */
+	protected TaskExecutor taskExecutor = new SimpleAsyncTaskExecutor();
+	
+	/** Milliseconds between polls. */
+	protected long pollInterval = DEFAULT_POLL_INTERVAL;
+	
+	// tasklet interface .........................................
+	
+	/**
+	 * Starts the command on the first call and polls it on the following ones. The chunk context is kept by the 
+	 * step as long as the tasklet returns {@link RepeatStatus#CONTINUABLE}.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		final StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+		
+		// the running command returns the number of input documents
+		FutureTask<Long> command = (FutureTask<Long>)chunkContext.getAttribute(COMMAND);
+		if (command == null) {
+			command = new FutureTask<Long>(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return StringUtils.hasText(pipeline) ? aggregate() : mapReduce();
+				}
+			});
+			chunkContext.setAttribute(COMMAND, command);
+			taskExecutor.execute(command);
+		}
+		
+		final long input;
+		try {
+			input = command.get(pollInterval, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			final String progress = getProgress();
+			if (progress != null) {
+				stepExecution.getExecutionContext().putString(PROGRESS, progress);
+			}
+			return RepeatStatus.CONTINUABLE;
+		} catch (ExecutionException e) {
+			chunkContext.removeAttribute(COMMAND);
+			throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+		}
+		
+		chunkContext.removeAttribute(COMMAND);
+		stepExecution.setReadCount( (int)input );
+		contribution.incrementWriteCount( (int)mongo.getDB(db).getCollection(outputCollection).count() );
+		stepExecution.getExecutionContext().remove(PROGRESS);
+		
+		return RepeatStatus.FINISHED;
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * Runs the aggregation pipeline.
+	 * 
+	 * @return Number of input documents.
+	 */
+	private long aggregate() {
+		final DBCollection coll = mongo.getDB(db).getCollection(collection);
+		final BasicDBList stages = (BasicDBList)parse(pipeline);
+		Assert.notEmpty(stages, "The pipeline must have at least one stage");
+		
+		final DBObject[] rest = new DBObject[stages.size()];
+		for (int i = 1; i < stages.size(); i++) {
+			rest[i - 1] = (DBObject)stages.get(i);
+		}
+		rest[stages.size() - 1] = new BasicDBObject("$out", outputCollection);
+		
+		// a leading $match restricts the input, which is counted before it is changed by other writers
+		final DBObject first = (DBObject)stages.get(0);
+		final long input = coll.count( first.containsField("$match") ? (DBObject)first.get("$match") : null );
+		
+		coll.aggregate(first, rest).getCommandResult().throwOnError();
+		return input;
+	}
+	
+	/**
+	 * Runs the map-reduce.
+	 * 
+	 * @return Number of input documents.
+	 */
+	private long mapReduce() {
+		final DBCollection coll = mongo.getDB(db).getCollection(collection);
+		final MapReduceCommand cmd = new MapReduceCommand(coll, map, reduce, outputCollection, 
+			MapReduceCommand.OutputType.REPLACE, StringUtils.hasText(query) ? (DBObject)parse(query) : null);
+		if ( StringUtils.hasText(finalizeFunction) ) {
+			cmd.setFinalize(finalizeFunction);
+		}
+		
+		final CommandResult result = coll.mapReduce(cmd).getCommandResult();
+		result.throwOnError();
+		
+		return ((Number)((DBObject)result.get("counts")).get("input")).longValue();
+	}
+	
+	/**
+	 * @return The progress message of the operation on the input collection, if any.
+	 */
+	private String getProgress() {
+		final DBObject ops = mongo.getDB("admin").getCollection("$cmd.sys.inprog").findOne();
+		if ( ops == null || !(ops.get("inprog") instanceof BasicDBList) ) {
+			return null;
+		}
+		
+		final String ns = db + "." + collection;
+		for (Object op: (BasicDBList)ops.get("inprog")) {
+			final DBObject operation = (DBObject)op;
+			if ( ns.equals(operation.get("ns")) && operation.get("msg") != null ) {
+				return String.valueOf( operation.get("msg") );
+			}
+		}
+		
+		return null;
+	}
+	
+	private static Object parse(String json) {
+		try {
+			return JSON.parse(json);
+		} catch (JSONParseException e) {
+			throw new IllegalArgumentException("Not a valid JSON document: " + json, e);
+		}
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setOutputCollection(String outputCollection) {
+		this.outputCollection = outputCollection;
+	}
+
+	public void setPipeline(String pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	public void setMap(String map) {
+		this.map = map;
+	}
+
+	public void setReduce(String reduce) {
+		this.reduce = reduce;
+	}
+
+	public void setFinalizeFunction(String finalizeFunction) {
+		this.finalizeFunction = finalizeFunction;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.hasText( outputCollection, "An output collection name is required" );
+		Assert.isTrue( StringUtils.hasText(pipeline) ^ (StringUtils.hasText(map) && StringUtils.hasText(reduce)), 
+			"Either a pipeline or map and reduce functions are required" );
+		Assert.notNull( taskExecutor, "A task executor is required" );
+		Assert.isTrue( pollInterval > 0, "The poll interval must be positive" );
+	}
+	
+}
@@ -0,0 +1,192 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+
+/**
+ * This item writer packs measurements of time series into bucket documents, one per series and time window
+ * with a limited number of entries.
+ * <p/>
+ * Each document is a measurement with the series in {@link #seriesField} and a {@link Date} in 
+ * {@link #timeField}. The measurements of a chunk are grouped by series and window, and each group is pushed 
+ * into the bucket with an upsert like:
+ * <pre>
+ * query:  { series: "s1", start: ISODate(...), count: { $lte: bucketSize - n } }
+ * update: { $push: { entries: { $each: [ ... ] } }, $inc: { count: n } }
+ * </pre>
+ * If the bucket of the window is full, a new bucket is created for it. Groups with more than {@link #bucketSize}
+ * measurements are split. An entry holds all fields of the measurement except the series and the <code>_id</code>.
+ * A compound index on the series and the start field is recommended.
+ * <p/>
+ * Required parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #seriesField}: Name of the field that identifies the series.</li>
+ * <li>{@link #timeField}: Name of the field that holds the time of a measurement.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #bucketSpan}: Length of a time window in milliseconds. Defaults to one hour.</li>
+ * <li>{@link #bucketSize}: Maximum number of entries of a bucket. Defaults to 200.</li>
+ * <li>{@link #startField}, {@link #countField}, {@link #entriesField}: Field names of a bucket. Default to 
+ * 		<code>start</code>, <code>count</code> and <code>entries</code>.</li>
+ * </ul>
+ * Pushing entries is not idempotent, so it is not retried, and neither checkpoints nor a journal are supported.
+ */
+public class MongoDBBucketItemWriter extends MongoDBItemWriter {
+
+	private static final long DEFAULT_BUCKET_SPAN = 60 * 60 * 1000;
+	
+	private static final int DEFAULT_BUCKET_SIZE = 200;
+	
+	// configurable attributes ......................................
+	
+	/** Name of the field that identifies the series. */
+	protected String seriesField;
+	
+	/** Name of the field that holds the time of a measurement. */
+	protected String timeField;
+	
+	/** Length of a time window in milliseconds. */
+	protected long bucketSpan = DEFAULT_BUCKET_SPAN;
+	
+	/** Maximum number of entries of a bucket. */
+	protected int bucketSize = DEFAULT_BUCKET_SIZE;
+	
+	/** Name of the bucket field that holds the start of the time window. */
+	protected String startField = "start";
+	
+	/** Name of the bucket field that holds the number of entries. */
+	protected String countField = "count";
+	
+	/** Name of the bucket field that holds the entries. */
+	protected String entriesField = "entries";
+	
+	/**
+	 * Groups the measurements by series and time window and pushes them into buckets.
+	 */
+	@Override
+	protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
+		final DBCollection coll = mongo.getDB(databaseName).getCollection(collectionName);
+		
+		for (Map.Entry<DBObject, List<DBObject>> group: group(docs).entrySet()) {
+			final List<DBObject> entries = group.getValue();
+			
+			for (int from = 0; from < entries.size(); from += bucketSize) {
+				final List<DBObject> slice = entries.subList(from, Math.min(from + bucketSize, entries.size()));
+				push(coll, wc, group.getKey(), slice);
+			}
+		}
+	}
+	
+	/**
+	 * @return The entries per bucket key (series and window start), in the order the keys first appear.
+	 */
+	private Map<DBObject, List<DBObject>> group(List<DBObject> docs) {
+		final Map<DBObject, List<DBObject>> groups = new LinkedHashMap<DBObject, List<DBObject>>();
+		
+		for (DBObject doc: docs) {
+			final Object series = doc.get(seriesField);
+			final Object time = doc.get(timeField);
+			if ( series == null || !(time instanceof Date) ) {
+				throw new IllegalArgumentException("Measurement without series or time: " + doc);
+			}
+			
+			final long millis = ((Date)time).getTime();
+			final DBObject key = new BasicDBObject(seriesField, series)
+				.append(startField, new Date(millis - ((millis % bucketSpan) + bucketSpan) % bucketSpan));
+			
+			List<DBObject> entries = groups.get(key);
+			if (entries == null) {
+				entries = new ArrayList<DBObject>();
+				groups.put(key, entries);
+			}
+			entries.add( toEntry(doc) );
+		}
+		
+		return groups;
+	}
+	
+	private DBObject toEntry(DBObject doc) {
+		final DBObject entry = new BasicDBObject();
+		
+		for (String field: doc.keySet()) {
+			if ( !field.equals(seriesField) && !"_id".equals(field) ) {
+				entry.put(field, doc.get(field));
+			}
+		}
+		
+		return entry;
+	}
+	
+	private void push(DBCollection coll, WriteConcern wc, DBObject key, List<DBObject> entries) {
+		final DBObject query = new BasicDBObject(key.toMap())
+			.append(countField, new BasicDBObject("$lte", bucketSize - entries.size()));
+		
+		final BasicDBList each = new BasicDBList();
+		each.addAll(entries);
+		final DBObject update = new BasicDBObject("$push", new BasicDBObject(entriesField, new BasicDBObject("$each", each)))
+			.append("$inc", new BasicDBObject(countField, entries.size()));
+		
+		final WriteResult wr = coll.update(query, update, true, false, wc);
+		
+		if ( checkWriteResult && wr != null && wr.getError() != null ) {
+			throw new MongoDBInsertFailedException(coll.getDB().getName(), coll.getName(), wr.getError() );
+		}
+	}
+	
+	// Setter ...............................................................
+	
+	public void setSeriesField(String seriesField) {
+		this.seriesField = seriesField;
+	}
+
+	public void setTimeField(String timeField) {
+		this.timeField = timeField;
+	}
+
+	public void setBucketSpan(long bucketSpan) {
+		this.bucketSpan = bucketSpan;
+	}
+
+	public void setBucketSize(int bucketSize) {
+		this.bucketSize = bucketSize;
+	}
+
+	public void setStartField(String startField) {
+		this.startField = startField;
+	}
+
+	public void setCountField(String countField) {
+		this.countField = countField;
+	}
+
+	public void setEntriesField(String entriesField) {
+		this.entriesField = entriesField;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		Assert.hasText( seriesField, "A series field is required" );
+		Assert.hasText( timeField, "A time field is required" );
+		Assert.isTrue( bucketSpan > 0, "The bucket span must be positive" );
+		Assert.isTrue( bucketSize > 0, "The bucket size must be positive" );
+		Assert.isTrue( retryLimit == 0, "Pushing entries is not retried" );
+		Assert.isTrue( checkpointInterval == 0 && checkpointDelay == 0, "Checkpoints are not supported" );
+		Assert.isNull( journalDirectory, "A journal is not supported" );
+	}
+	
+}
@@ -0,0 +1,225 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.OutputBuffer;
+
+/**
+ * This item writer only writes documents that are new or have changed.
+ * <p/>
+ * For each document, a content hash is computed from its BSON representation with the fields sorted by name,
+ * so it does not depend on the order of the fields. The hash is stored in the field {@link #hashField} of the 
+ * written document. The stored hashes of the documents of a chunk are fetched with one <code>$in</code> query
+ * on <code>_id</code>. Documents that are not stored yet are inserted with one call, documents with another hash 
+ * are replaced, and unchanged documents are skipped.
+ * <p/>
+ * If a {@link #cacheSize} is set, the hashes of written and fetched documents are kept in a local LRU cache, 
+ * and only the hashes of documents that are not in the cache are fetched. The cache assumes that no one else 
+ * changes the collection while the writer is used.
+ * <p/>
+ * Required parameters are the ones of {@link MongoDBItemWriter}. Each document needs an <code>_id</code>. 
+ * <p/>
+ * Optional parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #hashField}: Name of the field the hash is stored in. Defaults to <code>_hash</code>.</li>
+ * <li>{@link #cacheSize}: Maximum number of hashes in the local cache. Defaults to 0 (no cache).</li>
+ * </ul>
+ * The hash is added to the documents, so they cannot be pre-encoded, spilled or journaled, since all of these
+ * turn them into read-only documents.
+ */
+public class MongoDBChangeDetectionItemWriter extends MongoDBItemWriter {
+
+	private static final String DEFAULT_HASH_FIELD = "_hash";
+	
+	// configurable attributes ......................................
+	
+	/** Name of the field the hash is stored in. */
+	protected String hashField = DEFAULT_HASH_FIELD;
+	
+	/** Maximum number of hashes in the local cache. */
+	protected int cacheSize;
+	
+	// internally used attributes ......................................
+	
+	private Map<Object, String> cache;
+	
+	/**
+	 * Inserts new documents, replaces changed ones and skips unchanged ones.
+	 */
+	@Override
+	protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
+		final DBCollection coll = mongo.getDB(databaseName).getCollection(collectionName);
+		
+		final Map<Object, String> hashes = new LinkedHashMap<Object, String>();
+		for (DBObject doc: docs) {
+			final Object id = doc.get("_id");
+			if (id == null) {
+				throw new IllegalArgumentException("Document without _id: " + doc);
+			}
+			final String hash = hash(doc);
+			doc.put(hashField, hash);
+			hashes.put(id, hash);
+		}
+		
+		final Map<Object, String> stored = getStoredHashes(coll, hashes.keySet());
+		
+		final List<DBObject> inserts = new ArrayList<DBObject>();
+		final Set<Object> inserted = new HashSet<Object>();
+		for (DBObject doc: docs) {
+			final Object id = doc.get("_id");
+			final String hash = (String)doc.get(hashField);
+			
+			if ( !stored.containsKey(id) ) {
+				inserts.add(doc);
+				inserted.add(id);
+			} else if ( !hash.equals(stored.get(id)) ) {
+				if ( inserted.contains(id) ) {
+					// an earlier version of the document in this chunk has to be inserted first
+					super.doInsert(databaseName, collectionName, wc, inserts);
+					inserts.clear();
+					inserted.clear();
+				}
+				final WriteResult wr = coll.update(new BasicDBObject("_id", id), doc, true, false, wc);
+				if ( checkWriteResult && wr != null && wr.getError() != null ) {
+					throw new MongoDBInsertFailedException(databaseName, collectionName, wr.getError() );
+				}
+			}
+			stored.put(id, hash);
+		}
+		
+		if ( !inserts.isEmpty() ) {
+			super.doInsert(databaseName, collectionName, wc, inserts);
+		}
+		
+		if (cache != null) {
+			synchronized (cache) {
+				cache.putAll(hashes);
+			}
+		}
+	}
+	
+	/**
+	 * @return The stored hashes of the documents with the given ids. Documents that are not stored are missing, 
+	 * 		documents without a hash are mapped to <code>null</code>.
+	 */
+	private Map<Object, String> getStoredHashes(DBCollection coll, Iterable<Object> ids) {
+		final Map<Object, String> stored = new HashMap<Object, String>();
+		final BasicDBList missing = new BasicDBList();
+		
+		for (Object id: ids) {
+			final String hash = getCachedHash(id);
+			if (hash != null) {
+				stored.put(id, hash);
+			} else {
+				missing.add(id);
+			}
+		}
+		
+		if ( !missing.isEmpty() ) {
+			final DBCursor cursor = coll.find( new BasicDBObject("_id", new BasicDBObject("$in", missing)), 
+				new BasicDBObject(hashField, 1) );
+			try {
+				while ( cursor.hasNext() ) {
+					final DBObject doc = cursor.next();
+					stored.put( doc.get("_id"), (String)doc.get(hashField) );
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		return stored;
+	}
+	
+	private String getCachedHash(Object id) {
+		if (cache == null) {
+			return null;
+		}
+		
+		synchronized (cache) {
+			return cache.get(id);
+		}
+	}
+	
+	/**
+	 * @return The MD5 hash of the document with its fields sorted by name, not including the hash field.
+	 */
+	private String hash(DBObject doc) {
+		final DBObject canonical = canonicalize(doc);
+		canonical.removeField(hashField);
+		
+		final OutputBuffer buf = new BasicOutputBuffer();
+		DefaultDBEncoder.FACTORY.create().writeObject(buf, canonical);
+		
+		return DigestUtils.md5DigestAsHex( buf.toByteArray() );
+	}
+	
+	private static DBObject canonicalize(DBObject doc) {
+		if (doc instanceof List) {
+			final BasicDBList list = new BasicDBList();
+			for (Object value: (List<?>)doc) {
+				list.add( value instanceof DBObject ? canonicalize((DBObject)value) : value );
+			}
+			return list;
+		}
+		
+		final DBObject sorted = new BasicDBObject();
+		for (String field: new TreeSet<String>(doc.keySet())) {
+			final Object value = doc.get(field);
+			sorted.put(field, value instanceof DBObject ? canonicalize((DBObject)value) : value);
+		}
+		return sorted;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setHashField(String hashField) {
+		this.hashField = hashField;
+	}
+
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		Assert.hasText( hashField, "A hash field is required" );
+		Assert.isTrue( cacheSize >= 0, "The cache size must not be negative" );
+		Assert.isTrue( !preEncode, "Pre-encoded documents cannot get a hash" );
+		Assert.isTrue( spillThreshold == 0, "Spilled documents cannot get a hash" );
+		Assert.isNull( journalDirectory, "Journaled documents cannot get a hash" );
+		
+		if (cacheSize > 0) {
+			cache = new LinkedHashMap<Object, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, String> eldest) {
+					return size() > cacheSize;
+				}
+			};
+		}
+	}
+	
+}
@@ -0,0 +1,149 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.batch.classify.Classifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/**
+ * This item writer routes each document to a collection chosen from its content, e.g. by tenant or month.
+ * <p/>
+ * The {@link #classifier} returns the name of the target collection for each document, which may contain dots like
+ * <code>logs.2013</code>. Documents it maps to <code>null</code> are written to the default {@link #collection}. 
+ * To write to other databases, a {@link #databaseClassifier} returns the name of the target database, 
+ * <code>null</code> means the default {@link #db}. Each chunk is grouped by target, and each group is inserted with one 
+ * call. If a {@link #groupTaskExecutor} is given, the groups are inserted in parallel. 
+ * <p/>
+ * Required parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #classifier}: maps a document to its target collection.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #databaseClassifier}: maps a document to its target database.</li>
+ * <li>{@link #groupTaskExecutor}: Task executor to insert the groups of a chunk in parallel.</li>
+ * </ul>
+ * A staging collection, checkpoints and retries are not supported, since they refer to a single target collection.
+ */
+public class MongoDBClassifierItemWriter extends MongoDBItemWriter {
+
+	// configurable attributes ......................................
+	
+	/** Maps a document to its target collection. */
+	protected Classifier<DBObject, String> classifier;
+	
+	/** Maps a document to its target database (optional). */
+	protected Classifier<DBObject, String> databaseClassifier;
+	
+	/** Task executor to insert the groups of a chunk in parallel (optional). */
+	protected TaskExecutor groupTaskExecutor;
+	
+	/**
+	 * Groups the documents by target and inserts each group.
+	 */
+	@Override
+	protected void doInsert(String databaseName, String collectionName, final WriteConcern wc, List<DBObject> docs) {
+		final Map<String, List<DBObject>> groups = new LinkedHashMap<String, List<DBObject>>();
+		
+		for (DBObject doc: docs) {
+			String targetCollection = classifier.classify(doc);
+			if (targetCollection == null) {
+				targetCollection = collectionName;
+			}
+			String targetDatabase = databaseClassifier != null ? databaseClassifier.classify(doc) : null;
+			if (targetDatabase == null) {
+				targetDatabase = databaseName;
+			}
+			// database names cannot contain a dot, so the namespace is split at the first one
+			final String target = targetDatabase + "." + targetCollection;
+			
+			List<DBObject> group = groups.get(target);
+			if (group == null) {
+				group = new ArrayList<DBObject>();
+				groups.put(target, group);
+			}
+			group.add(doc);
+		}
+		
+		if ( groupTaskExecutor == null || groups.size() == 1 ) {
+			for (Map.Entry<String, List<DBObject>> group: groups.entrySet()) {
+				insertGroup(group.getKey(), wc, group.getValue());
+			}
+			return;
+		}
+		
+		final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+		for (final Map.Entry<String, List<DBObject>> group: groups.entrySet()) {
+			final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					insertGroup(group.getKey(), wc, group.getValue());
+					return null;
+				}
+			});
+			tasks.add(task);
+			groupTaskExecutor.execute(task);
+		}
+		
+		// wait for all groups before reporting the first failure
+		RuntimeException failure = null;
+		for (FutureTask<Void> task: tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException 
+						? (RuntimeException)e.getCause()
+						: new MongoDBInsertFailedException("Could not insert document/s", e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MongoDBInsertFailedException("Interrupted while inserting document/s", e);
+			}
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	private void insertGroup(String namespace, WriteConcern wc, List<DBObject> docs) {
+		final int dot = namespace.indexOf('.');
+		super.doInsert(namespace.substring(0, dot), namespace.substring(dot + 1), wc, docs);
+	}
+	
+	// Setter ...............................................................
+	
+	public void setClassifier(Classifier<DBObject, String> classifier) {
+		this.classifier = classifier;
+	}
+
+	public void setDatabaseClassifier(Classifier<DBObject, String> databaseClassifier) {
+		this.databaseClassifier = databaseClassifier;
+	}
+
+	public void setGroupTaskExecutor(TaskExecutor groupTaskExecutor) {
+		this.groupTaskExecutor = groupTaskExecutor;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		Assert.notNull( classifier, "A classifier is required" );
+		Assert.isNull( stagingCollection, "A staging collection is not supported" );
+		Assert.isTrue( checkpointInterval == 0 && checkpointDelay == 0, "Checkpoints are not supported" );
+		Assert.isTrue( retryLimit == 0, "Retried inserts cannot be confirmed in several collections" );
+	}
+	
+}
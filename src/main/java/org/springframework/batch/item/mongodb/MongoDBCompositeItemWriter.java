@@ -0,0 +1,230 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * A composite item writer that writes to its {@link MongoDBItemWriter} delegates in parallel with the others, 
+ * so the latency of a chunk is about the maximum of the delegates instead of their sum.
+ * <p/>
+ * The MongoDB delegates run on the {@link #taskExecutor}, all other delegates run one after another on the 
+ * calling thread, which keeps them in the transaction of the chunk. The writer waits for all delegates before 
+ * it returns. If a MongoDB delegate is transactional and a transaction is active, only the preparation of the 
+ * documents runs in parallel. The documents are bound to the transaction on the calling thread and inserted 
+ * after it commits, as with the delegate on its own. Documents are only added to the coalescing buffer of a 
+ * delegate after all delegates have written the chunk without failure.
+ * <p/>
+ * Spring Batch does not register the delegates of a writer as listeners, so this writer forwards the chunk and 
+ * step callbacks to its MongoDB delegates. That way failed inserts after commit are reported and the delegates
+ * still run their work at the end of the step. Register this writer as listener if it is not the writer of 
+ * the step itself.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #delegates}: The writers to write to.</li>
+ * <li>{@link #taskExecutor}: Task executor for the MongoDB delegates.</li>
+ * </ul>
+ * MongoDB delegates with checkpoints are not supported, since a checkpoint has to run on the thread of the
+ * unacknowledged inserts.
+ */
+public class MongoDBCompositeItemWriter<T> 
+	implements ItemWriter<T>, ItemStream, InitializingBean, ChunkListener, StepExecutionListener {
+
+	// configurable attributes ......................................
+	
+	/** The writers to write to. */
+	protected List<ItemWriter<? super T>> delegates;
+	
+	/** Task executor for the MongoDB delegates. */
+	protected TaskExecutor taskExecutor;
+	
+	@Override
+	public void write(final List<? extends T> items) throws Exception {
+		final List<MongoDBItemWriter> mongoWriters = new ArrayList<MongoDBItemWriter>();
+		final List<FutureTask<MongoDBItemWriter.PreparedChunk>> tasks = 
+			new ArrayList<FutureTask<MongoDBItemWriter.PreparedChunk>>();
+		
+		for (ItemWriter<? super T> delegate: delegates) {
+			if (delegate instanceof MongoDBItemWriter) {
+				final MongoDBItemWriter writer = (MongoDBItemWriter)delegate;
+				// depends on the transaction of the calling thread
+				final boolean deferred = writer.isDeferred();
+				
+				final FutureTask<MongoDBItemWriter.PreparedChunk> task = new FutureTask<MongoDBItemWriter.PreparedChunk>(
+					new Callable<MongoDBItemWriter.PreparedChunk>() {
+						@Override
+						public MongoDBItemWriter.PreparedChunk call() throws Exception {
+							final MongoDBItemWriter.PreparedChunk chunk = writer.prepareChunk(items);
+							if (deferred) {
+								return chunk;
+							}
+							writer.insertChunk(chunk);
+							return null;
+						}
+					});
+				mongoWriters.add(writer);
+				tasks.add(task);
+				taskExecutor.execute(task);
+			}
+		}
+		
+		Exception failure = null;
+		try {
+			for (ItemWriter<? super T> delegate: delegates) {
+				if ( !(delegate instanceof MongoDBItemWriter) ) {
+					delegate.write(items);
+				}
+			}
+		} catch (Exception e) {
+			failure = e;
+		}
+		
+		// wait for all MongoDB delegates before reporting the first failure
+		for (int i = 0; i < tasks.size(); i++) {
+			try {
+				final MongoDBItemWriter.PreparedChunk chunk = tasks.get(i).get();
+				if (chunk != null && failure == null) {
+					mongoWriters.get(i).deferChunk(chunk);
+				}
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof Exception 
+						? (Exception)e.getCause()
+						: new MongoDBInsertFailedException("Could not insert document/s", e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MongoDBInsertFailedException("Interrupted while inserting document/s", e);
+			}
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	// item stream interface ...............................................
+	
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		for (ItemWriter<? super T> delegate: delegates) {
+			if (delegate instanceof ItemStream) {
+				((ItemStream)delegate).open(executionContext);
+			}
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		for (ItemWriter<? super T> delegate: delegates) {
+			if (delegate instanceof ItemStream) {
+				((ItemStream)delegate).update(executionContext);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		for (ItemWriter<? super T> delegate: delegates) {
+			if (delegate instanceof ItemStream) {
+				((ItemStream)delegate).close();
+			}
+		}
+	}
+	
+	// chunk and step listener interface ...................................
+	
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		for (MongoDBItemWriter writer: getMongoWriters()) {
+			writer.beforeStep(stepExecution);
+		}
+	}
+
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		ExitStatus exitStatus = null;
+		for (MongoDBItemWriter writer: getMongoWriters()) {
+			final ExitStatus status = writer.afterStep(stepExecution);
+			if (status != null) {
+				exitStatus = exitStatus == null ? status : exitStatus.and(status);
+			}
+		}
+		return exitStatus;
+	}
+
+	@Override
+	public void beforeChunk() {
+		for (MongoDBItemWriter writer: getMongoWriters()) {
+			writer.beforeChunk();
+		}
+	}
+
+	/**
+	 * Lets all MongoDB delegates report failed inserts and throws the first failure.
+	 */
+	@Override
+	public void afterChunk() {
+		RuntimeException failure = null;
+		for (MongoDBItemWriter writer: getMongoWriters()) {
+			try {
+				writer.afterChunk();
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	// private methods .....................................................
+	
+	private List<MongoDBItemWriter> getMongoWriters() {
+		final List<MongoDBItemWriter> writers = new ArrayList<MongoDBItemWriter>();
+		for (ItemWriter<? super T> delegate: delegates) {
+			if (delegate instanceof MongoDBItemWriter) {
+				writers.add( (MongoDBItemWriter)delegate );
+			}
+		}
+		return writers;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setDelegates(List<ItemWriter<? super T>> delegates) {
+		this.delegates = delegates;
+	}
+
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notEmpty( delegates, "The delegates must not be empty" );
+		Assert.notNull( taskExecutor, "A task executor is required" );
+		for (ItemWriter<? super T> delegate: delegates) {
+			Assert.isTrue( !(delegate instanceof MongoDBItemWriter) || !((MongoDBItemWriter)delegate).isCheckpointing(), 
+				"MongoDB delegates with checkpoints are not supported" );
+		}
+	}
+	
+}
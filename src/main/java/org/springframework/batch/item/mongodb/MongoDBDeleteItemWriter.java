@@ -0,0 +1,226 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+
+/**
+ * This item writer removes documents from a MongoDB collection, optionally after copying them to an archive
+ * collection.
+ * <p/>
+ * Items are documents with an <code>_id</code> or plain <code>_id</code> values. The ids of a chunk are removed
+ * in batches of {@link #batchSize} with one <code>$in</code> query each. 
+ * <p/>
+ * If an {@link #archiveCollection} is set, the documents of a batch are inserted into the archive collection first 
+ * with an acknowledged write concern and only removed from the source if that succeeded. Items that are plain ids 
+ * are read from the source collection for that. After a duplicate key error, the batch is only removed if all of 
+ * its documents are found in the archive by their <code>_id</code>, so a batch that was archived but not removed 
+ * before a failure is moved again on restart, while a document rejected by another unique index is not lost.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #collection}: Name of the collection to remove from.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #writeConcern}</li>
+ * <li>{@link #batchSize}: Maximum number of ids per remove. Defaults to 1000, so a query stays far below the
+ * 		maximum document size of the server even for large ids.</li>
+ * <li>{@link #archiveDb}: Name of the archive database. Defaults to {@link #db}.</li>
+ * <li>{@link #archiveCollection}: Name of the archive collection.</li>
+ * </ul>
+ * Removing documents cannot be rolled back, so documents are removed when the chunk is written. Since removing 
+ * by id is idempotent, a chunk can be safely written again on restart.
+ */
+public class MongoDBDeleteItemWriter implements ItemWriter<Object>, InitializingBean {
+
+	/** By default, up to 1000 ids are removed at once. */
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	private static final String ID = "_id";
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the collection to remove from. */
+	protected String collection;
+	
+	/** Overwrite the write concern of the collections (optional). */
+	protected WriteConcern writeConcern;
+	
+	/** Maximum number of ids per remove. */
+	protected int batchSize = DEFAULT_BATCH_SIZE;
+	
+	/** Name of the archive database (optional). */
+	protected String archiveDb;
+	
+	/** Name of the archive collection (optional). */
+	protected String archiveCollection;
+	
+	// public item writer interface .........................................
+	
+	@Override
+	public void write(List<? extends Object> items) throws Exception {
+		if (items == null) {
+			return;
+		}
+		
+		for (int from = 0; from < items.size(); from += batchSize) {
+			final List<? extends Object> batch = items.subList(from, Math.min(from + batchSize, items.size()));
+			
+			final BasicDBList ids = new BasicDBList();
+			for (Object item: batch) {
+				final Object id = item instanceof DBObject ? ((DBObject)item).get(ID) : item;
+				if (id == null) {
+					throw new IllegalArgumentException("Cannot remove document without _id: " + item);
+				}
+				ids.add(id);
+			}
+			
+			if (archiveCollection != null) {
+				archive(batch, ids);
+			}
+			remove(ids);
+		}
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * Inserts the documents of a batch into the archive collection.
+	 */
+	private void archive(List<? extends Object> batch, BasicDBList ids) {
+		final DBCollection source = mongo.getDB(db).getCollection(collection);
+		final List<DBObject> docs = new ArrayList<DBObject>(batch.size());
+		final BasicDBList missing = new BasicDBList();
+		
+		for (Object item: batch) {
+			if (item instanceof DBObject) {
+				docs.add( (DBObject)item );
+			} else {
+				missing.add(item);
+			}
+		}
+		
+		if ( !missing.isEmpty() ) {
+			final DBCursor cursor = source.find( new BasicDBObject(ID, new BasicDBObject("$in", missing)) );
+			try {
+				while ( cursor.hasNext() ) {
+					docs.add( cursor.next() );
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		if ( docs.isEmpty() ) {
+			return;
+		}
+		
+		final String archiveDbName = archiveDb != null ? archiveDb : db;
+		final DBCollection archive = mongo.getDB(archiveDbName).getCollection(archiveCollection);
+		try {
+			archive.insert(docs, getArchiveWriteConcern());
+		} catch (MongoException.DuplicateKey e) {
+			// documents archived by a previous run that failed before removing them, but only the last error 
+			// of the batch is reported
+			final BasicDBList archivedIds = new BasicDBList();
+			for (DBObject doc: docs) {
+				archivedIds.add( doc.get(ID) );
+			}
+			final long found = archive.count( new BasicDBObject(ID, new BasicDBObject("$in", archivedIds)) );
+			if ( found < archivedIds.size() ) {
+				throw new MongoDBInsertFailedException(archiveDbName, archiveCollection, 
+					(archivedIds.size() - found) + " of " + archivedIds.size() 
+					+ " document/s could not be archived, none of them were removed", e);
+			}
+		} catch (MongoException e) {
+			throw new MongoDBInsertFailedException(archiveDbName, archiveCollection, 
+				"Could not archive document/s, none of them were removed", e);
+		}
+	}
+	
+	private void remove(BasicDBList ids) {
+		final WriteResult wr = mongo.getDB(db).getCollection(collection)
+			.remove( new BasicDBObject(ID, new BasicDBObject("$in", ids)), getWriteConcern() );
+		
+		if ( wr != null && wr.getError() != null ) {
+			throw new MongoException("Could not remove document/s from " + db + "." + collection + ": " + wr.getError());
+		}
+	}
+	
+	private WriteConcern getWriteConcern() {
+		return writeConcern == null ? mongo.getWriteConcern() : writeConcern;
+	}
+	
+	/**
+	 * @return The write concern for archiving, which is always acknowledged, since the documents are removed
+	 * 		right after.
+	 */
+	private WriteConcern getArchiveWriteConcern() {
+		final WriteConcern wc = getWriteConcern();
+		return (wc.callGetLastError() ? wc : WriteConcern.ACKNOWLEDGED).continueOnErrorForInsert(true);
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setWriteConcern(WriteConcern writeConcern) {
+		this.writeConcern = writeConcern;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setArchiveDb(String archiveDb) {
+		this.archiveDb = archiveDb;
+	}
+
+	public void setArchiveCollection(String archiveCollection) {
+		this.archiveCollection = archiveCollection;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.isTrue( batchSize > 0, "The batch size must be positive" );
+		Assert.isTrue( archiveCollection == null || (archiveDb != null && !archiveDb.equals(db))
+			|| !archiveCollection.equals(collection), "The archive collection must differ from the collection" );
+	}
+	
+}
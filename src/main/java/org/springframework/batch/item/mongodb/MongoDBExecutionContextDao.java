@@ -0,0 +1,70 @@
+package org.springframework.batch.item.mongodb;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+/**
+ * {@link ExecutionContextDao} that stores the execution contexts in the documents of the job and step executions,
+ * so saving a context is a single <code>$set</code> of one field.
+ * <p/>
+ * Values of type <code>String</code>, <code>Integer</code>, <code>Long</code>, <code>Double</code>,
+ * <code>Boolean</code> and <code>Date</code> are stored as BSON values, all others are stored as
+ * serialized Java objects.
+ */
+public class MongoDBExecutionContextDao extends AbstractMongoDBDao implements ExecutionContextDao {
+
+	@Override
+	public ExecutionContext getExecutionContext(JobExecution jobExecution) {
+		return load(getCollection(JOB_EXECUTION), jobExecution.getId());
+	}
+
+	@Override
+	public ExecutionContext getExecutionContext(StepExecution stepExecution) {
+		return load(getCollection(STEP_EXECUTION), stepExecution.getId());
+	}
+
+	@Override
+	public void saveExecutionContext(JobExecution jobExecution) {
+		store(getCollection(JOB_EXECUTION), jobExecution.getId(), jobExecution.getExecutionContext());
+	}
+
+	@Override
+	public void saveExecutionContext(StepExecution stepExecution) {
+		store(getCollection(STEP_EXECUTION), stepExecution.getId(), stepExecution.getExecutionContext());
+	}
+
+	@Override
+	public void updateExecutionContext(JobExecution jobExecution) {
+		store(getCollection(JOB_EXECUTION), jobExecution.getId(), jobExecution.getExecutionContext());
+	}
+
+	@Override
+	public void updateExecutionContext(StepExecution stepExecution) {
+		store(getCollection(STEP_EXECUTION), stepExecution.getId(), stepExecution.getExecutionContext());
+	}
+	
+	// private methods .....................................................
+	
+	private ExecutionContext load(DBCollection coll, Long id) {
+		Assert.notNull(id, "ExecutionId must not be null.");
+		
+		final DBObject doc = coll.findOne(new BasicDBObject(ID, id), new BasicDBObject(CONTEXT, 1));
+		return toExecutionContext(doc == null ? null : doc.get(CONTEXT));
+	}
+	
+	private void store(DBCollection coll, Long id, ExecutionContext executionContext) {
+		Assert.notNull(id, "ExecutionId must not be null.");
+		Assert.notNull(executionContext, "The ExecutionContext must not be null.");
+		
+		coll.update(new BasicDBObject(ID, id), 
+			new BasicDBObject("$set", new BasicDBObject(CONTEXT, toDBList(executionContext))), false, false, WRITE_CONCERN);
+	}
+	
+}
@@ -0,0 +1,146 @@
+package org.springframework.batch.item.mongodb;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.gridfs.GridFS;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * This item reader reads the files of a GridFS bucket.
+ * <p/>
+ * Each item is a {@link GridFSDBFile}, which only holds the description of the file. Its content is streamed
+ * chunk by chunk from the server by {@link GridFSDBFile#getInputStream()}, so a file is never held on the heap 
+ * as a whole. The descriptions are read with a single cursor on the files collection, and files are read in the 
+ * order of their <code>_id</code>, so a restarted step continues after the last file of the last committed chunk.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #bucket}: Name of the GridFS bucket. Defaults to {@link GridFS#DEFAULT_BUCKET}.</li>
+ * <li>{@link #query}: a query string in JSON notation on the file descriptions, 
+ * 		e.g. <code>{contentType: "application/pdf"}</code></li>
+ * </ul>
+ */
+public class MongoDBGridFSItemReader 
+	extends AbstractItemCountingItemStreamItemReader<GridFSDBFile> 
+	implements InitializingBean {
+
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database to read from. */
+	protected String db;
+	
+	/** Name of the GridFS bucket. */
+	protected String bucket = GridFS.DEFAULT_BUCKET;
+	
+	/** Query in JSON notation on the file descriptions (optional). */
+	protected String query;
+	
+	// internally used attributes ......................................
+	
+	private GridFS gridFS;
+	
+	/** Cursor on the file descriptions. */
+	private DBCursor cursor;
+	
+	// public item reader interface .........................................
+	
+	public MongoDBGridFSItemReader() {
+		setName(ClassUtils.getShortName(MongoDBGridFSItemReader.class));
+	}
+	
+	@Override
+	protected void doOpen() throws Exception {
+		gridFS = new GridFS(mongo.getDB(db), bucket);
+		
+		DBObject ref = null;
+		if ( StringUtils.hasText(query) ) {
+			try {
+				ref = (DBObject)JSON.parse(query);
+			} catch (JSONParseException e) {
+				throw new IllegalArgumentException("Not a valid JSON document: " + query, e);
+			}
+		}
+		
+		cursor = gridFS.getFileList(ref).sort( new BasicDBObject("_id", 1) );
+	}
+
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		cursor.skip(itemIndex);
+	}
+	
+	@Override
+	protected GridFSDBFile doRead() throws Exception {
+		return cursor.hasNext() ? new ReadFile(gridFS, cursor.next()) : null;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+	}
+	
+	/** 
+	 * A file description of the cursor, which is bound to the GridFS to stream its content. 
+	 */
+	private static class ReadFile extends GridFSDBFile {
+		
+		private ReadFile(GridFS gridFS, DBObject description) {
+			for (String key: description.keySet()) {
+				final Object value = description.get(key);
+				if (value != null) {
+					put(key, value);
+				}
+			}
+			setGridFS(gridFS);
+		}
+		
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setBucket(String bucket) {
+		this.bucket = bucket;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( bucket, "A bucket name is required" );
+	}
+	
+}
@@ -0,0 +1,239 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.gridfs.GridFS;
+
+import org.bson.types.ObjectId;
+
+/**
+ * This item writer stores resources as files in a GridFS bucket.
+ * <p/>
+ * The content of each resource is streamed through a buffer of {@link #chunkSize} bytes, and the GridFS chunks 
+ * are inserted in batches of {@link #chunkBatchSize}, so only one batch of chunks is held on the heap. The file 
+ * description including the MD5 checksum is inserted last, so a file becomes visible only when it is complete. 
+ * The chunks of a file that could not be written completely are removed.
+ * <p/>
+ * Files are written when the chunk is written. If {@link #skipExisting} is set, resources for which a file with 
+ * the same name exists are skipped, so a restarted step continues after the last completed file.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #bucket}: Name of the GridFS bucket. Defaults to {@link GridFS#DEFAULT_BUCKET}.</li>
+ * <li>{@link #writeConcern}</li>
+ * <li>{@link #chunkSize}: Size of a GridFS chunk in bytes. Defaults to {@link GridFS#DEFAULT_CHUNKSIZE}.</li>
+ * <li>{@link #chunkBatchSize}: Number of GridFS chunks per insert. Defaults to 16.</li>
+ * <li>{@link #skipExisting}: Skip resources for which a file with the same name exists.</li>
+ * </ul>
+ */
+public class MongoDBGridFSItemWriter implements ItemWriter<Resource>, InitializingBean {
+
+	/** By default, 16 GridFS chunks are inserted at once. */
+	private static final int DEFAULT_CHUNK_BATCH_SIZE = 16;
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the GridFS bucket. */
+	protected String bucket = GridFS.DEFAULT_BUCKET;
+	
+	/** Overwrite the write concern of the bucket collections (optional). */
+	protected WriteConcern writeConcern;
+	
+	/** Size of a GridFS chunk in bytes. */
+	protected int chunkSize = GridFS.DEFAULT_CHUNKSIZE;
+	
+	/** Number of GridFS chunks per insert. */
+	protected int chunkBatchSize = DEFAULT_CHUNK_BATCH_SIZE;
+	
+	/** Flag to indicate that resources should be skipped if a file with the same name exists. */
+	protected boolean skipExisting;
+	
+	// public item writer interface .........................................
+	
+	@Override
+	public void write(List<? extends Resource> items) throws Exception {
+		final DB mongoDB = mongo.getDB(db);
+		
+		// creates the index on the chunks
+		new GridFS(mongoDB, bucket);
+		
+		final DBCollection files = mongoDB.getCollection(bucket + ".files");
+		final DBCollection chunks = mongoDB.getCollection(bucket + ".chunks");
+		final byte[] buffer = new byte[chunkSize];
+		
+		for (Resource resource: items) {
+			if ( skipExisting && files.findOne(new BasicDBObject("filename", resource.getFilename())) != null ) {
+				continue;
+			}
+			
+			final ObjectId id = ObjectId.get();
+			try {
+				writeFile(files, chunks, id, resource, buffer);
+			} catch (Exception e) {
+				chunks.remove( new BasicDBObject("files_id", id) );
+				throw e;
+			}
+		}
+	}
+	
+	// private methods .....................................................
+	
+	private void writeFile(DBCollection files, DBCollection chunks, ObjectId id, Resource resource, byte[] buffer) 
+			throws IOException {
+		final WriteConcern wc = writeConcern == null ? mongo.getWriteConcern() : writeConcern;
+		final MessageDigest md5 = newMD5();
+		final List<DBObject> batch = new ArrayList<DBObject>(chunkBatchSize);
+		long length = 0;
+		int n = 0;
+		
+		final InputStream in = resource.getInputStream();
+		try {
+			for (int read = fill(in, buffer); read > 0; read = fill(in, buffer)) {
+				md5.update(buffer, 0, read);
+				length += read;
+				
+				batch.add( new BasicDBObject("files_id", id)
+					.append("n", n++)
+					.append("data", Arrays.copyOf(buffer, read)) );
+				
+				if ( batch.size() >= chunkBatchSize ) {
+					insert(chunks, batch, wc);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		insert(chunks, batch, wc);
+		
+		final List<DBObject> file = new ArrayList<DBObject>(1);
+		file.add( new BasicDBObject("_id", id)
+			.append("filename", resource.getFilename())
+			.append("length", length)
+			.append("chunkSize", chunkSize)
+			.append("uploadDate", new Date())
+			.append("md5", toHex(md5.digest())) );
+		insert(files, file, wc);
+	}
+	
+	private static void insert(DBCollection coll, List<DBObject> docs, WriteConcern wc) {
+		if ( docs.isEmpty() ) {
+			return;
+		}
+		
+		try {
+			coll.insert(docs, wc);
+		} catch (MongoException e) {
+			throw new MongoDBInsertFailedException(coll.getDB().getName(), coll.getName(), 
+				"Could not insert GridFS document/s", e);
+		}
+		docs.clear();
+	}
+	
+	/**
+	 * Reads until the buffer is full or the stream has ended.
+	 * 
+	 * @return Number of bytes read.
+	 */
+	private static int fill(InputStream in, byte[] buffer) throws IOException {
+		int total = 0;
+		
+		while (total < buffer.length) {
+			final int read = in.read(buffer, total, buffer.length - total);
+			if (read < 0) {
+				break;
+			}
+			total += read;
+		}
+		
+		return total;
+	}
+	
+	private static MessageDigest newMD5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is not available", e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		
+		for (byte b: bytes) {
+			hex.append( Character.forDigit((b >> 4) & 0xf, 16) ).append( Character.forDigit(b & 0xf, 16) );
+		}
+		
+		return hex.toString();
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setBucket(String bucket) {
+		this.bucket = bucket;
+	}
+
+	public void setWriteConcern(WriteConcern writeConcern) {
+		this.writeConcern = writeConcern;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setChunkBatchSize(int chunkBatchSize) {
+		this.chunkBatchSize = chunkBatchSize;
+	}
+
+	public void setSkipExisting(boolean skipExisting) {
+		this.skipExisting = skipExisting;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( bucket, "A bucket name is required" );
+		Assert.isTrue( chunkSize > 0 && chunkSize <= GridFS.MAX_CHUNKSIZE, "Invalid chunk size" );
+		Assert.isTrue( chunkBatchSize > 0, "The chunk batch size must be positive" );
+	}
+	
+}
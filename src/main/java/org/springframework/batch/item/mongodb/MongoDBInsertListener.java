@@ -0,0 +1,18 @@
+package org.springframework.batch.item.mongodb;
+
+/**
+ * Listener that is notified by a {@link MongoDBItemWriter} after each insert operation.
+ */
+public interface MongoDBInsertListener {
+
+	/**
+	 * Called after documents have been inserted successfully.
+	 * 
+	 * @param databaseName Name of the database.
+	 * @param collectionName Name of the collection.
+	 * @param count Number of inserted documents.
+	 * @param nanos Duration of the insert operation in nanoseconds.
+	 */
+	void afterInsert(String databaseName, String collectionName, int count, long nanos);
+	
+}
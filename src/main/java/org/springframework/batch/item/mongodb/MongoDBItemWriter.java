@@ -1,20 +1,58 @@
 package org.springframework.batch.item.mongodb;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBEncoder;
 import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
 import com.mongodb.Mongo;
+import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.mongodb.util.JSON;
+
+import org.bson.BSONObject;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.OutputBuffer;
+import org.bson.types.ObjectId;
 
 /**
  * This item writer writes documents to a MongoDB collection.
@@ -34,6 +72,25 @@ import com.mongodb.WriteResult;
  * <li>{@link #converter}</li>
  * <li>{@link #writeConcern}</li>
  * <li>{@link #transactional}</li>
+ * <li>{@link #coalesceMaxDocuments}, {@link #coalesceMaxBytes}, {@link #coalesceMaxDelay}: 
+ * 		thresholds for coalescing several chunks into one insert (see below).</li>
+ * <li>{@link #preEncode}, {@link #encodingTaskExecutor}, {@link #encodingSliceSize}: encode the documents to BSON
+ * 		when the chunk is written (see below).</li>
+ * <li>{@link #spillThreshold}, {@link #spillDirectory}, {@link #spillBatchSize}: spill large transactional
+ * 		chunks to disk (see below).</li>
+ * <li>{@link #journalDirectory}, {@link #journalSegmentSize}: keep a write-ahead journal of transactional
+ * 		chunks (see below).</li>
+ * <li>{@link #stagingCollection}: load into a staging collection that replaces the target collection
+ * 		when the step has completed (see below).</li>
+ * <li>{@link #insertListeners}: listeners notified after each insert, e.g. a 
+ * 		{@link MongoDBAdaptiveCompletionPolicy}.</li>
+ * <li>{@link #checkpointInterval}, {@link #checkpointDelay}: write chunks unacknowledged and check them 
+ * 		at periodic checkpoints (see below).</li>
+ * <li>{@link #assignIds}: assign an <code>_id</code> to each document when the chunk is written.</li>
+ * <li>{@link #retryLimit}, {@link #retryBackoff}, {@link #retryBackoffMultiplier}: retry inserts that failed 
+ * 		because of transient errors (see below).</li>
+ * <li>{@link #deduplicationKey}, {@link #deduplicationAcrossStep}, {@link #deduplicationBloomFilterSize}, 
+ * 		{@link #deduplicationFalsePositiveRate}: drop documents with duplicate keys (see below).</li>
  * </ul>
  * 
  * MongoDB does not support transactions, but we have a {@link #transactional} flag here. What is it supposed to do?
@@ -54,15 +111,124 @@ import com.mongodb.WriteResult;
  * transaction synchronization features here. Because exceptions in transaction synchronizations do not get propagated,
  * we catch a potential throwable and use a {@link org.springframework.batch.core.ChunkListener} to re-throw it.  
  * 
- * When {@link #transactional} is set to {@code true}, this writer is *not* thread-safe.
+ * The cache is bound to the current transaction as a resource (see 
+ * {@link TransactionSynchronizationManager#bindResource(Object, Object)}) and a failure is kept for the thread that
+ * completed the transaction, so this writer is thread-safe and may be used in multi-threaded steps.
+ * 
+ * Coalescing is switched on by setting at least one of the thresholds {@link #coalesceMaxDocuments}, 
+ * {@link #coalesceMaxBytes} or {@link #coalesceMaxDelay}. The documents of the chunks are then collected in 
+ * a buffer and inserted with one call as soon as one threshold is reached. This pays off if the 
+ * commit-interval has to be small because of other resources written in the same step. The buffer is stored 
+ * in the {@link ExecutionContext}, so documents of committed chunks are not lost when a job is restarted, and 
+ * it is flushed in {@link #afterStep(StepExecution)}. Since the buffer has to be stored with the chunk that 
+ * filled it, a chunk is added when it is written and removed again if its transaction rolls back. A batch that 
+ * is drained from the buffer is inserted after the transaction of the chunk that reached the threshold commits.
+ * The buffer is shared by all threads, so another thread could drain and insert the documents of a chunk that 
+ * is rolled back later: coalescing requires a single-threaded step. If the writer is used as a delegate 
+ * (e.g. of a {@link org.springframework.batch.item.support.CompositeItemWriter}), it has to be registered as 
+ * stream and as listener of the step explicitly. The time threshold is only checked when a chunk is written.
+ * 
+ * If {@link #preEncode} is set to {@code true}, the documents are encoded to BSON while the chunk is written,
+ * and the insert after commit only sends the encoded bytes. The cached documents are then held as compact
+ * byte arrays (see {@link LazyDBObject}) instead of object graphs. Documents without an <code>_id</code> get 
+ * one assigned before they are encoded. If an {@link #encodingTaskExecutor} is given, chunks with more than 
+ * {@link #encodingSliceSize} documents are encoded in slices in parallel.
+ * 
+ * If a {@link #spillThreshold} is set, the documents cached for a transaction are written to a temporary file
+ * in the {@link #spillDirectory} as soon as their BSON size exceeds the threshold. After commit, they are read back
+ * from the memory-mapped file and inserted in batches of {@link #spillBatchSize} documents, so the heap usage 
+ * does not depend on the size of a chunk. Sizes are cheap to compute for pre-encoded documents. Spilling is not 
+ * used together with coalescing, because the coalescing buffer is bounded by its own thresholds.
+ * 
+ * If a {@link #journalDirectory} is set, the documents of a transactional chunk are appended to a local journal
+ * of memory-mapped segment files when the chunk is written, i.e. before the transaction commits. The sequence 
+ * number of the last journal record is stored in the {@link ExecutionContext}, so it is committed together with
+ * the chunk. A record is completed after its documents have been inserted or the transaction has been rolled back. 
+ * If the JVM dies in between, {@link #open(ExecutionContext)} inserts the documents of all records that belong to
+ * committed chunks when the job is restarted and discards the others. Documents get an <code>_id</code> before 
+ * they are journaled, and duplicate keys are ignored on replay, so a chunk that was partially inserted 
+ * is not inserted twice. Like any restart relying on the execution context, this requires a single-threaded step
+ * and a journal directory that is not shared with other writers.
+ * 
+ * If a {@link #stagingCollection} is set, all documents are inserted into that collection instead. It is dropped 
+ * before the step starts, unless the step is restarted. When the step has completed, the secondary indexes of the
+ * target {@link #collection} are built on the staging collection, which is then renamed to the target 
+ * collection, dropping the old one. Readers of the target collection never see a partially loaded collection, 
+ * and no indexes of the target collection are maintained while loading. If the step fails, the staging 
+ * collection is kept, so a restart continues to load into it.
+ * 
+ * If a {@link #checkpointInterval} or a {@link #checkpointDelay} is set, chunks are inserted with an unacknowledged 
+ * write concern on a connection that is reserved for the writer until the next checkpoint. A checkpoint is run after
+ * every {@link #checkpointInterval} chunks, after the first chunk that ends at least {@link #checkpointDelay} 
+ * milliseconds after the last checkpoint, and in {@link #afterStep(StepExecution)}. It waits for the 
+ * acknowledgement of the configured write concern (see {@link DB#getLastError(WriteConcern)}) and checks that all 
+ * documents inserted since the last checkpoint exist. If not, a {@link MongoDBInsertFailedException} naming the 
+ * chunks covered by the checkpoint is thrown, or the step is marked as failed. Since the checked documents are 
+ * identified by their <code>_id</code>, documents without one get an <code>_id</code> assigned. Checkpoints require 
+ * a single-threaded step, because the reserved connection is bound to the thread.
+ * 
+ * If {@link #assignIds} is set, documents without an <code>_id</code> get one assigned when the chunk is written, 
+ * so they keep their identity no matter how often they are sent to the server. This is required to set a
+ * {@link #retryLimit}: an insert that fails with a network error or because the primary stepped down is then 
+ * retried up to that many times, after waiting {@link #retryBackoff} milliseconds, multiplied by 
+ * {@link #retryBackoffMultiplier} for each further attempt. Retries continue on errors, because the documents of 
+ * the failed attempt may have reached the server. A duplicate key error on a retry is only taken as success if 
+ * all documents are found by their <code>_id</code>, since the server only reports the last error of the batch.
+ * 
+ * If a {@link #deduplicationKey} is set, documents whose key field has the same value as the one of an earlier 
+ * document of the chunk are dropped before they reach the server. If {@link #deduplicationAcrossStep} is set, 
+ * the keys of all committed chunks of the step are kept in memory, and documents with a known key are dropped 
+ * as well. The keys are kept in a hash set or, if a {@link #deduplicationBloomFilterSize} is set, in a Bloom filter 
+ * sized for that many keys with the {@link #deduplicationFalsePositiveRate}. A document matched by the Bloom filter 
+ * is only dropped if the server confirms that the key exists in the collection, so false positives do not lose 
+ * documents. Keys still in the coalescing buffer are not confirmed. The number of dropped documents is stored in 
+ * the {@link ExecutionContext}; the known keys are not, so they are not restored on restart.
  * 
  * @author Tobias Trelle, Tobias Flohre
  */
-public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean, ChunkListener {
+public class MongoDBItemWriter implements ItemWriter<Object>, ItemStream, InitializingBean, ChunkListener, 
+	StepExecutionListener {
 	
 	/** By default, a writer is transaction aware. */
 	private static final boolean DEFAULT_TRANSACTIONAL = true;
 	
+	/** Key of the coalescing buffer in the execution context. */
+	private static final String COALESCE_BUFFER = "coalesce.buffer";
+	
+	/** By default, chunks are encoded in parallel slices of this size. */
+	private static final int DEFAULT_ENCODING_SLICE_SIZE = 1000;
+	
+	/** By default, spilled documents are inserted in batches of this size. */
+	private static final int DEFAULT_SPILL_BATCH_SIZE = 1000;
+	
+	/** Key of the staging marker in the execution context. */
+	private static final String STAGING = "staging";
+	
+	/** Key of the last journal sequence number in the execution context. */
+	private static final String JOURNAL_SEQUENCE = "journal.sequence";
+	
+	/** At most this many ids are counted with one <code>$in</code> query, so it stays far below the maximum document size. */
+	private static final int COUNT_BATCH_SIZE = 1000;
+	
+	/** By default, the first retry of an insert waits this many milliseconds. */
+	private static final long DEFAULT_RETRY_BACKOFF = 100;
+	
+	/** By default, the time to wait doubles with each retry. */
+	private static final double DEFAULT_RETRY_BACKOFF_MULTIPLIER = 2.0;
+	
+	/** Error codes of the server that indicate that the primary has stepped down. */
+	private static final Collection<Integer> NOT_MASTER_CODES = 
+		new HashSet<Integer>( Arrays.asList(10054, 10056, 10058, 10107, 13435, 13436) );
+	
+	/** Key of the number of dropped duplicates in the execution context. */
+	private static final String DUPLICATES = "duplicates";
+	
+	/** By default, the Bloom filter for deduplication has a false positive rate of 1%. */
+	private static final double DEFAULT_DEDUPLICATION_FALSE_POSITIVE_RATE = 0.01;
+	
+	/** By default, journal segment files have a size of 64 MB. */
+	private static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
 	/** 
 	 * By default, we check the write result after a chunk of documents is inserted.
 	 * We may get a better performance if you set this flag to <code>false</code>.
@@ -98,41 +264,683 @@ public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean,
 	 */
 	protected boolean checkWriteResult = DEFAULT_CHECK_WRITE_RESULT;
 	
-	private List<DBObject> dbObjectCache = null;
+	/** 
+	 * Insert the buffered documents of several chunks if the buffer holds at least 
+	 * this many documents (optional). 
+	 */
+	protected int coalesceMaxDocuments;
+	
+	/** 
+	 * Insert the buffered documents of several chunks if their BSON size sums up to 
+	 * at least this many bytes (optional). 
+	 */
+	protected long coalesceMaxBytes;
+	
+	/** 
+	 * Insert the buffered documents of several chunks if the oldest one has been buffered
+	 * for at least this many milliseconds (optional). 
+	 */
+	protected long coalesceMaxDelay;
+	
+	/** Flag to indicate that documents should be encoded to BSON when a chunk is written. */
+	protected boolean preEncode;
+	
+	/** Task executor to encode slices of large chunks in parallel (optional). */
+	protected TaskExecutor encodingTaskExecutor;
+	
+	/** Number of documents per slice that is encoded by the {@link #encodingTaskExecutor}. */
+	protected int encodingSliceSize = DEFAULT_ENCODING_SLICE_SIZE;
+	
+	/** 
+	 * Spill the documents of a transaction to disk if their BSON size exceeds this many bytes (optional). 
+	 */
+	protected long spillThreshold;
+	
+	/** Directory for spill files. Defaults to the temp directory of the JVM. */
+	protected File spillDirectory;
+	
+	/** Number of documents per insert when spilled documents are read back. */
+	protected int spillBatchSize = DEFAULT_SPILL_BATCH_SIZE;
+	
+	/** Directory of the write-ahead journal (optional). */
+	protected File journalDirectory;
+	
+	/** Size of a journal segment file in bytes. */
+	protected int journalSegmentSize = DEFAULT_JOURNAL_SEGMENT_SIZE;
+	
+	/** 
+	 * Name of a collection to load into. It replaces {@link #collection} when the step has completed (optional). 
+	 */
+	protected String stagingCollection;
+	
+	/** Listeners notified after each insert (optional). */
+	protected List<MongoDBInsertListener> insertListeners = new ArrayList<MongoDBInsertListener>();
+	
+	/** Run an acknowledged checkpoint after this many chunks (optional). */
+	protected int checkpointInterval;
+	
+	/** 
+	 * Run an acknowledged checkpoint after a chunk if the last checkpoint is at least this many 
+	 * milliseconds ago (optional). 
+	 */
+	protected long checkpointDelay;
+	
+	/** Flag to indicate that documents should get an <code>_id</code> when the chunk is written. */
+	protected boolean assignIds;
+	
+	/** Maximum number of retries of an insert that failed because of a transient error. */
+	protected int retryLimit;
+	
+	/** Milliseconds to wait before the first retry. */
+	protected long retryBackoff = DEFAULT_RETRY_BACKOFF;
+	
+	/** Factor the time to wait grows by with each retry. */
+	protected double retryBackoffMultiplier = DEFAULT_RETRY_BACKOFF_MULTIPLIER;
+	
+	/** Name of the field documents are deduplicated by (optional). */
+	protected String deduplicationKey;
+	
+	/** Flag to indicate that documents should be deduplicated across the chunks of a step. */
+	protected boolean deduplicationAcrossStep;
+	
+	/** Number of keys the Bloom filter for deduplication is sized for. Keys are kept in a hash set if not set. */
+	protected long deduplicationBloomFilterSize;
+	
+	/** False positive rate of the Bloom filter for deduplication. */
+	protected double deduplicationFalsePositiveRate = DEFAULT_DEDUPLICATION_FALSE_POSITIVE_RATE;
+	
+	private final ExecutionContextUserSupport ecSupport = new ExecutionContextUserSupport();
+	
+	private final ThreadLocal<Throwable> mongoDbFailure = new ThreadLocal<Throwable>();
 	
-	private Throwable mongoDbFailure = null;
+	private final Object coalesceLock = new Object();
+	
+	/** Computes the sizes of the buffered documents, only used while holding the {@link #coalesceLock}. */
+	private final DBEncoder coalesceEncoder = DefaultDBEncoder.FACTORY.create();
+	
+	private List<DBObject> coalesceBuffer = new ArrayList<DBObject>();
+	
+	private long coalesceBufferBytes;
+	
+	private long coalesceBufferSince;
+	
+	private BsonJournal journal;
+	
+	/** <code>_id</code>s of the documents inserted unacknowledged since the last checkpoint. */
+	private final List<Object> uncheckedIds = new ArrayList<Object>();
+	
+	/** Number of chunks since the step started. */
+	private long chunkCount;
+	
+	/** Number of the first chunk after the last checkpoint. */
+	private long checkpointChunk = 1;
+	
+	private long checkpointTime = System.currentTimeMillis();
+	
+	/** Keys of the committed chunks if deduplicating across the step with a hash set. */
+	private Set<Object> knownKeys;
+	
+	/** Keys of the committed chunks if deduplicating across the step with a Bloom filter. */
+	private BloomFilter knownKeysFilter;
+	
+	private final AtomicLong duplicates = new AtomicLong();
 
 	// public item writer interface .........................................
 	
+	public MongoDBItemWriter() {
+		setName(ClassUtils.getShortName(MongoDBItemWriter.class));
+	}
+	
 	@Override
 	public void write(List<? extends Object> items) throws Exception {
-		final WriteConcern wc = writeConcern == null ? mongo.getWriteConcern() : writeConcern;
+		final PreparedChunk chunk = prepareChunk(items);
 		
-		if (transactional && TransactionSynchronizationManager.isActualTransactionActive()) {
-			dbObjectCache = prepareDocuments(items);
-			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
-
-				@Override
-				public void afterCompletion(int status) {
-					try {
-						if (status == STATUS_COMMITTED) {
-							doInsert(db, collection, wc, dbObjectCache);
-						}
-					} catch (Throwable t) {
-						mongoDbFailure = t;
-					} finally {
-						dbObjectCache = null;
-					}
+		if ( isDeferred() ) {
+			deferChunk(chunk);
+		} else {
+			insertChunk(chunk);
+		}
+	}
+	
+	// package private methods ...............................................
+	
+	/**
+	 * @return <code>true</code> if the documents are inserted after the transaction of the current thread commits.
+	 */
+	boolean isDeferred() {
+		return transactional && TransactionSynchronizationManager.isActualTransactionActive();
+	}
+	
+	/**
+	 * Converts and deduplicates the items. This neither depends on the current transaction nor changes 
+	 * the coalescing buffer, so it may run on another thread and the chunk may be dropped.
+	 */
+	PreparedChunk prepareChunk(List<? extends Object> items) throws Exception {
+		final List<Object> keys = new ArrayList<Object>();
+		final List<DBObject> docs = deduplicationKey != null 
+			? deduplicate(prepareDocuments(items), keys) 
+			: prepareDocuments(items);
+		
+		return new PreparedChunk(docs, keys);
+	}
+	
+	/**
+	 * Coalesces a prepared chunk and binds it to the transaction of the current thread, which removes it from the 
+	 * coalescing buffer again if it rolls back.
+	 */
+	void deferChunk(PreparedChunk chunk) throws IOException {
+		final TransactionalDocuments txDocs = getTransactionalDocuments( getChunkWriteConcern() );
+		txDocs.add(chunk.docs, isCoalescing() ? coalesce(chunk.docs) : chunk.docs, chunk.keys);
+	}
+	
+	/**
+	 * Coalesces a prepared chunk and inserts it right away if a threshold is reached.
+	 */
+	void insertChunk(PreparedChunk chunk) {
+		final List<DBObject> batch = isCoalescing() ? coalesce(chunk.docs) : chunk.docs;
+		if (batch != null) {
+			insert(getTargetCollection(), getChunkWriteConcern(), batch);
+		}
+		rememberKeys(chunk.keys);
+	}
+	
+	/**
+	 * @return <code>true</code> if chunks are inserted without acknowledgement and checked at checkpoints.
+	 */
+	boolean isCheckpointing() {
+		return checkpointInterval > 0 || checkpointDelay > 0;
+	}
+	
+	// item stream interface ...............................................
+	
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		final String key = ecSupport.getKey(COALESCE_BUFFER);
+		
+		synchronized (coalesceLock) {
+			coalesceBuffer = new ArrayList<DBObject>();
+			coalesceBufferBytes = 0;
+			
+			if ( executionContext.containsKey(key) ) {
+				for ( Object o: (BasicDBList)JSON.parse(executionContext.getString(key)) ) {
+					addToCoalesceBuffer( (DBObject)o );
 				}
+			}
+		}
+		
+		duplicates.set( executionContext.getLong(ecSupport.getKey(DUPLICATES), 0) );
+		if (deduplicationAcrossStep) {
+			if (deduplicationBloomFilterSize > 0) {
+				knownKeysFilter = new BloomFilter(deduplicationBloomFilterSize, deduplicationFalsePositiveRate);
+			} else {
+				knownKeys = new HashSet<Object>();
+			}
+		}
+		
+		if (journalDirectory != null) {
+			try {
+				journal = new BsonJournal(journalDirectory, ecSupport.getKey("journal"), journalSegmentSize, 
+					new PreEncodedDBEncoder());
+				replayJournal( executionContext.getLong(ecSupport.getKey(JOURNAL_SEQUENCE), 0) );
+			} catch (IOException e) {
+				throw new ItemStreamException("Cannot open journal in " + journalDirectory, e);
+			}
+		}
+	}
 
-			});
-		} else {
-			doInsert(db, collection, wc, prepareDocuments(items) );
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		final String key = ecSupport.getKey(COALESCE_BUFFER);
+		
+		synchronized (coalesceLock) {
+			if ( coalesceBuffer.isEmpty() ) {
+				executionContext.remove(key);
+			} else {
+				final BasicDBList list = new BasicDBList();
+				list.addAll(coalesceBuffer);
+				executionContext.putString(key, JSON.serialize(list));
+			}
+		}
+		
+		if (journal != null) {
+			executionContext.putLong(ecSupport.getKey(JOURNAL_SEQUENCE), journal.getSequence());
+		}
+		
+		if (deduplicationKey != null) {
+			executionContext.putLong(ecSupport.getKey(DUPLICATES), duplicates.get());
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		if (journal != null) {
+			journal.close();
+			journal = null;
 		}
+		knownKeys = null;
+		knownKeysFilter = null;
+	}
+	
+	/**
+	 * @return Number of documents that were dropped as duplicates.
+	 */
+	public long getDuplicateCount() {
+		return duplicates.get();
 	}
 	
 	// private methods .....................................................
-	private List<DBObject> prepareDocuments(List<? extends Object> items)  {
+	
+	private WriteConcern getWriteConcern() {
+		return writeConcern == null ? mongo.getWriteConcern() : writeConcern;
+	}
+	
+	private WriteConcern getChunkWriteConcern() {
+		return isCheckpointing() ? WriteConcern.UNACKNOWLEDGED : getWriteConcern();
+	}
+	
+	/**
+	 * Drops documents whose key occurs earlier in the chunk or in a committed chunk of the step.
+	 * 
+	 * @param keys Receives the keys of the kept documents.
+	 * @return The kept documents.
+	 */
+	private List<DBObject> deduplicate(List<DBObject> docs, List<Object> keys) {
+		final Set<Object> chunkKeys = new HashSet<Object>();
+		final List<Object> candidates = new ArrayList<Object>();
+		
+		for (DBObject doc: docs) {
+			final Object key = doc.get(deduplicationKey);
+			if ( key != null && chunkKeys.add(key) && knownKeysFilter != null && knownKeysFilter.mightContain(key) ) {
+				candidates.add(key);
+			}
+		}
+		
+		// keys matched by the Bloom filter are only known if the server confirms them
+		final Set<Object> confirmed = new HashSet<Object>();
+		if ( !candidates.isEmpty() ) {
+			final DBCursor cursor = mongo.getDB(db).getCollection(getTargetCollection()).find(
+				new BasicDBObject(deduplicationKey, new BasicDBObject("$in", candidates)), 
+				new BasicDBObject(deduplicationKey, 1) );
+			try {
+				while ( cursor.hasNext() ) {
+					confirmed.add( cursor.next().get(deduplicationKey) );
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		chunkKeys.clear();
+		final List<DBObject> kept = new ArrayList<DBObject>(docs.size());
+		for (DBObject doc: docs) {
+			final Object key = doc.get(deduplicationKey);
+			if (key == null) {
+				kept.add(doc);
+			} else if ( chunkKeys.add(key) && !confirmed.contains(key) && !isKnownKey(key) ) {
+				kept.add(doc);
+				keys.add(key);
+			} else {
+				duplicates.incrementAndGet();
+			}
+		}
+		
+		return kept;
+	}
+	
+	private boolean isKnownKey(Object key) {
+		if (knownKeys == null) {
+			return false;
+		}
+		synchronized (knownKeys) {
+			return knownKeys.contains(key);
+		}
+	}
+	
+	/**
+	 * Adds the keys of a committed chunk to the known keys.
+	 */
+	private void rememberKeys(List<Object> keys) {
+		if (knownKeys != null) {
+			synchronized (knownKeys) {
+				knownKeys.addAll(keys);
+			}
+		} else if (knownKeysFilter != null) {
+			for (Object key: keys) {
+				knownKeysFilter.put(key);
+			}
+		}
+	}
+	
+	private boolean isCoalescing() {
+		return coalesceMaxDocuments > 0 || coalesceMaxBytes > 0 || coalesceMaxDelay > 0;
+	}
+	
+	/**
+	 * Adds the documents of a chunk to the coalescing buffer. 
+	 * 
+	 * @return The buffered documents if a threshold was reached, otherwise <code>null</code>.
+	 */
+	private List<DBObject> coalesce(List<DBObject> docs) {
+		synchronized (coalesceLock) {
+			for (DBObject doc: docs) {
+				addToCoalesceBuffer(doc);
+			}
+			
+			if ( coalesceBuffer.isEmpty() ) {
+				return null;
+			}
+			
+			final boolean full = 
+				(coalesceMaxDocuments > 0 && coalesceBuffer.size() >= coalesceMaxDocuments)
+				|| (coalesceMaxBytes > 0 && coalesceBufferBytes >= coalesceMaxBytes)
+				|| (coalesceMaxDelay > 0 && System.currentTimeMillis() - coalesceBufferSince >= coalesceMaxDelay);
+			
+			return full ? drainCoalesceBuffer() : null;
+		}
+	}
+	
+	private void addToCoalesceBuffer(DBObject doc) {
+		if ( coalesceBuffer.isEmpty() ) {
+			coalesceBufferSince = System.currentTimeMillis();
+		}
+		coalesceBuffer.add(doc);
+		
+		if ( coalesceMaxBytes > 0 ) {
+			coalesceBufferBytes += bsonSize(doc, coalesceEncoder);
+		}
+	}
+	
+	/**
+	 * Inserts the documents of all pending journal records that belong to committed chunks
+	 * and discards the others. Journaled documents are read back read-only, so they must carry an 
+	 * <code>_id</code>, which {@link #write(List)} assigns before journaling.
+	 * 
+	 * @param committed Sequence number of the last record of a committed chunk.
+	 */
+	private void replayJournal(long committed) {
+		final WriteConcern wc = getWriteConcern().continueOnErrorForInsert(true);
+		
+		for (long seq: journal.getPendingSequences()) {
+			if (seq <= committed) {
+				final List<DBObject> docs = journal.read(seq);
+				for (DBObject doc: docs) {
+					if (doc.get("_id") == null) {
+						throw new ItemStreamException("Journal record " + seq + " contains a document without _id");
+					}
+				}
+				try {
+					insert(getTargetCollection(), wc, docs);
+				} catch (MongoException.DuplicateKey e) {
+					// documents of this record have already been inserted before
+				}
+			}
+			journal.complete(seq);
+		}
+		
+		journal.skipTo(committed);
+	}
+	
+	/**
+	 * Inserts documents and notifies the {@link #insertListeners}.
+	 */
+	private void insert(String collectionName, WriteConcern wc, List<DBObject> docs) {
+		if ( isCheckpointing() && !wc.callGetLastError() ) {
+			// errors are only reported on the connection the documents were inserted with
+			if ( uncheckedIds.isEmpty() ) {
+				mongo.getDB(db).requestStart();
+			}
+			for (DBObject doc: docs) {
+				assignId(doc);
+				if ( doc.get("_id") != null ) {
+					uncheckedIds.add( doc.get("_id") );
+				}
+			}
+		}
+		
+		final long start = System.nanoTime();
+		
+		insertWithRetry(collectionName, wc, docs);
+		
+		final long nanos = System.nanoTime() - start;
+		for (MongoDBInsertListener listener: insertListeners) {
+			listener.afterInsert(db, collectionName, docs.size(), nanos);
+		}
+	}
+	
+	/**
+	 * Inserts documents and retries transient errors up to {@link #retryLimit} times.
+	 */
+	private void insertWithRetry(String collectionName, WriteConcern wc, List<DBObject> docs) {
+		long backoff = retryBackoff;
+		
+		for (int attempt = 0; ; attempt++) {
+			try {
+				if (attempt == 0) {
+					doInsert(db, collectionName, wc, docs);
+				} else {
+					doInsert(db, collectionName, wc.continueOnErrorForInsert(true), docs);
+				}
+				return;
+			} catch (MongoException.DuplicateKey e) {
+				if (attempt == 0) {
+					throw e;
+				}
+				// documents of a previous attempt may have reached the server, or another unique index was violated
+				final List<Object> ids = new ArrayList<Object>(docs.size());
+				for (DBObject doc: docs) {
+					ids.add( doc.get("_id") );
+				}
+				final long found = countExisting(collectionName, ids);
+				if ( found < ids.size() ) {
+					throw new MongoDBInsertFailedException(db, collectionName, (ids.size() - found) + " of " 
+						+ ids.size() + " document/s are missing after retrying the insert", e);
+				}
+				return;
+			} catch (MongoException e) {
+				if ( attempt >= retryLimit || !isTransient(e) ) {
+					throw e;
+				}
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+				backoff = (long)(backoff * retryBackoffMultiplier);
+			}
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the error is caused by the network or a primary that stepped down.
+	 */
+	private static boolean isTransient(MongoException e) {
+		return e instanceof MongoException.Network 
+			|| NOT_MASTER_CODES.contains( e.getCode() )
+			|| (e.getMessage() != null && e.getMessage().contains("not master"));
+	}
+	
+	/**
+	 * Waits for the acknowledgement of the documents inserted since the last checkpoint and checks
+	 * that all of them exist.
+	 * 
+	 * @throws MongoDBInsertFailedException If the documents of the checked chunks cannot be confirmed.
+	 */
+	private void checkpoint() {
+		final String range = "chunks " + checkpointChunk + " to " + chunkCount;
+		checkpointChunk = chunkCount + 1;
+		checkpointTime = System.currentTimeMillis();
+		
+		if ( uncheckedIds.isEmpty() ) {
+			return;
+		}
+		
+		final DB mongoDB = mongo.getDB(db);
+		try {
+			final WriteConcern wc = getWriteConcern().callGetLastError() ? getWriteConcern() : WriteConcern.ACKNOWLEDGED;
+			mongoDB.getLastError(wc).throwOnError();
+			
+			final long found = countExisting(getTargetCollection(), uncheckedIds);
+			if ( found < uncheckedIds.size() ) {
+				throw new MongoDBInsertFailedException(db, getTargetCollection(), 
+					(uncheckedIds.size() - found) + " of " + uncheckedIds.size() + " document/s are missing");
+			}
+		} catch (RuntimeException e) {
+			throw new MongoDBInsertFailedException(db, getTargetCollection(), "Checkpoint failed for " + range, e);
+		} finally {
+			uncheckedIds.clear();
+			mongoDB.requestDone();
+		}
+	}
+	
+	/**
+	 * Counts the documents with the given ids in batches of {@link #COUNT_BATCH_SIZE} ids.
+	 * 
+	 * @return Number of ids that exist in the collection.
+	 */
+	private long countExisting(String collectionName, List<Object> ids) {
+		final DBCollection coll = mongo.getDB(db).getCollection(collectionName);
+		long found = 0;
+		
+		for (int from = 0; from < ids.size(); from += COUNT_BATCH_SIZE) {
+			final List<Object> batch = ids.subList(from, Math.min(from + COUNT_BATCH_SIZE, ids.size()));
+			found += coll.count( new BasicDBObject("_id", new BasicDBObject("$in", batch)) );
+		}
+		
+		return found;
+	}
+	
+	/**
+	 * @return Name of the collection documents are inserted into.
+	 */
+	private String getTargetCollection() {
+		return stagingCollection != null ? stagingCollection : collection;
+	}
+	
+	/**
+	 * Inserts the documents that are still in the coalescing buffer. If that fails, the step
+	 * is marked as failed and the documents are kept in the execution context for a restart.
+	 */
+	private ExitStatus flushCoalesceBuffer(StepExecution stepExecution) {
+		synchronized (coalesceLock) {
+			if ( coalesceBuffer.isEmpty() ) {
+				return null;
+			}
+			
+			try {
+				insert(getTargetCollection(), getWriteConcern(), coalesceBuffer);
+			} catch (RuntimeException e) {
+				stepExecution.upgradeStatus(BatchStatus.FAILED);
+				stepExecution.addFailureException( new MongoDBInsertFailedException(db, getTargetCollection(), 
+					"Could not insert coalesced document/s into collection", e) );
+				return ExitStatus.FAILED;
+			}
+			
+			drainCoalesceBuffer();
+			update( stepExecution.getExecutionContext() );
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Builds the secondary indexes of the target collection on the staging collection and renames
+	 * the staging collection to the target collection.
+	 */
+	private ExitStatus swapStagingCollection(StepExecution stepExecution) {
+		final DB mongoDB = mongo.getDB(db);
+		final DBCollection staging = mongoDB.getCollection(stagingCollection);
+		
+		try {
+			if ( !mongoDB.collectionExists(stagingCollection) ) {
+				mongoDB.createCollection(stagingCollection, null);
+			}
+			
+			if ( mongoDB.collectionExists(collection) ) {
+				for (DBObject index: mongoDB.getCollection(collection).getIndexInfo()) {
+					if ( !"_id_".equals(index.get("name")) ) {
+						MongoDBDeferredIndexListener.createIndex(staging, index, false);
+					}
+				}
+			}
+			
+			staging.rename(collection, true);
+		} catch (MongoException e) {
+			stepExecution.upgradeStatus(BatchStatus.FAILED);
+			stepExecution.addFailureException(e);
+			return ExitStatus.FAILED;
+		}
+		
+		stepExecution.getExecutionContext().remove( ecSupport.getKey(STAGING) );
+		
+		return null;
+	}
+	
+	private static void assignId(DBObject doc) {
+		if ( !(doc instanceof LazyDBObject) && doc.get("_id") == null ) {
+			doc.put("_id", ObjectId.get());
+		}
+	}
+	
+	private static int bsonSize(DBObject doc, DBEncoder encoder) {
+		return doc instanceof LazyDBObject 
+			? ((LazyDBObject)doc).getBSONSize() 
+			: encoder.writeObject(new BasicOutputBuffer(), doc);
+	}
+	
+	private static boolean containsPreEncoded(List<DBObject> docs) {
+		for (DBObject doc: docs) {
+			if (doc instanceof LazyDBObject) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private List<DBObject> drainCoalesceBuffer() {
+		final List<DBObject> batch = coalesceBuffer;
+		
+		coalesceBuffer = new ArrayList<DBObject>();
+		coalesceBufferBytes = 0;
+		
+		return batch;
+	}
+	
+	/**
+	 * Removes the documents of a rolled back chunk from the coalescing buffer. If the buffer
+	 * has been drained by that chunk, the documents of the previous chunks are put back.
+	 */
+	private void rollbackCoalesceBuffer(List<DBObject> docs, List<DBObject> drained) {
+		final Set<DBObject> rolledBack = Collections.newSetFromMap(new IdentityHashMap<DBObject, Boolean>());
+		rolledBack.addAll(docs);
+		
+		synchronized (coalesceLock) {
+			final List<DBObject> kept = drained != null ? drained : drainCoalesceBuffer();
+			for (DBObject doc: kept) {
+				if ( !rolledBack.contains(doc) ) {
+					addToCoalesceBuffer(doc);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the documents bound to the current transaction. On first access, they are bound
+	 * and registered for transaction synchronization.
+	 */
+	private TransactionalDocuments getTransactionalDocuments(WriteConcern wc) {
+		TransactionalDocuments txDocs = (TransactionalDocuments)TransactionSynchronizationManager.getResource(this);
+		
+		if (txDocs == null) {
+			txDocs = new TransactionalDocuments(wc);
+			TransactionSynchronizationManager.bindResource(this, txDocs);
+			TransactionSynchronizationManager.registerSynchronization(txDocs);
+		}
+		
+		return txDocs;
+	}
+	
+	private List<DBObject> prepareDocuments(List<? extends Object> items) throws Exception {
 		final List<DBObject> docs = new ArrayList<DBObject>();
 		
 		if ( items != null ) {
@@ -147,7 +955,68 @@ public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean,
 			}
 		}
 		
-		return docs;
+		if (assignIds) {
+			for (DBObject doc: docs) {
+				assignId(doc);
+			}
+		}
+		
+		return preEncode ? encodeDocuments(docs) : docs;
+	}
+	
+	/**
+	 * Encodes the documents to BSON, in parallel slices if the list is large and 
+	 * a task executor is available.
+	 */
+	private List<DBObject> encodeDocuments(final List<DBObject> docs) throws Exception {
+		if ( encodingTaskExecutor == null || docs.size() <= encodingSliceSize ) {
+			return encodeSlice(docs);
+		}
+		
+		final List<FutureTask<List<DBObject>>> tasks = new ArrayList<FutureTask<List<DBObject>>>();
+		for (int from = 0; from < docs.size(); from += encodingSliceSize) {
+			final List<DBObject> slice = docs.subList(from, Math.min(from + encodingSliceSize, docs.size()));
+			final FutureTask<List<DBObject>> task = new FutureTask<List<DBObject>>(new Callable<List<DBObject>>() {
+				@Override
+				public List<DBObject> call() throws Exception {
+					return encodeSlice(slice);
+				}
+			});
+			tasks.add(task);
+			encodingTaskExecutor.execute(task);
+		}
+		
+		final List<DBObject> encoded = new ArrayList<DBObject>(docs.size());
+		for (FutureTask<List<DBObject>> task: tasks) {
+			try {
+				encoded.addAll( task.get() );
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+			}
+		}
+		
+		return encoded;
+	}
+	
+	private static List<DBObject> encodeSlice(List<DBObject> docs) {
+		final List<DBObject> encoded = new ArrayList<DBObject>(docs.size());
+		final DBEncoder encoder = DefaultDBEncoder.FACTORY.create();
+		
+		for (DBObject doc: docs) {
+			if (doc instanceof LazyDBObject) {
+				encoded.add(doc);
+				continue;
+			}
+			
+			// the driver cannot add an _id to an encoded document
+			assignId(doc);
+			
+			final OutputBuffer buf = new BasicOutputBuffer();
+			encoder.writeObject(buf, doc);
+			encoded.add( new LazyDBObject(buf.toByteArray(), new LazyDBCallback(null)) );
+		}
+		
+		return encoded;
 	}
 	
 	// Setter ...............................................................
@@ -183,12 +1052,173 @@ public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean,
 	public void setCheckWriteResult(boolean checkWriteResult) {
 		this.checkWriteResult = checkWriteResult;
 	}
+	
+	public void setCoalesceMaxDocuments(int coalesceMaxDocuments) {
+		this.coalesceMaxDocuments = coalesceMaxDocuments;
+	}
+
+	public void setCoalesceMaxBytes(long coalesceMaxBytes) {
+		this.coalesceMaxBytes = coalesceMaxBytes;
+	}
+
+	public void setCoalesceMaxDelay(long coalesceMaxDelay) {
+		this.coalesceMaxDelay = coalesceMaxDelay;
+	}
+	
+	/**
+	 * Flag to indicate that documents should be encoded to BSON when a chunk is written
+	 * instead of when it is inserted. Defaults to false.
+	 */
+	public void setPreEncode(boolean preEncode) {
+		this.preEncode = preEncode;
+	}
+
+	public void setEncodingTaskExecutor(TaskExecutor encodingTaskExecutor) {
+		this.encodingTaskExecutor = encodingTaskExecutor;
+	}
+
+	public void setEncodingSliceSize(int encodingSliceSize) {
+		this.encodingSliceSize = encodingSliceSize;
+	}
+
+	public void setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	public void setSpillBatchSize(int spillBatchSize) {
+		this.spillBatchSize = spillBatchSize;
+	}
+
+	public void setJournalDirectory(File journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	public void setJournalSegmentSize(int journalSegmentSize) {
+		this.journalSegmentSize = journalSegmentSize;
+	}
+
+	public void setStagingCollection(String stagingCollection) {
+		this.stagingCollection = stagingCollection;
+	}
+
+	public void setInsertListeners(List<MongoDBInsertListener> insertListeners) {
+		this.insertListeners = insertListeners;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public void setCheckpointDelay(long checkpointDelay) {
+		this.checkpointDelay = checkpointDelay;
+	}
+
+	/**
+	 * Flag to indicate that documents without an <code>_id</code> should get one when the chunk
+	 * is written instead of when it is inserted. Defaults to false.
+	 */
+	public void setAssignIds(boolean assignIds) {
+		this.assignIds = assignIds;
+	}
+
+	public void setRetryLimit(int retryLimit) {
+		this.retryLimit = retryLimit;
+	}
+
+	public void setRetryBackoff(long retryBackoff) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	public void setRetryBackoffMultiplier(double retryBackoffMultiplier) {
+		this.retryBackoffMultiplier = retryBackoffMultiplier;
+	}
+
+	public void setDeduplicationKey(String deduplicationKey) {
+		this.deduplicationKey = deduplicationKey;
+	}
+
+	public void setDeduplicationAcrossStep(boolean deduplicationAcrossStep) {
+		this.deduplicationAcrossStep = deduplicationAcrossStep;
+	}
+
+	public void setDeduplicationBloomFilterSize(long deduplicationBloomFilterSize) {
+		this.deduplicationBloomFilterSize = deduplicationBloomFilterSize;
+	}
+
+	public void setDeduplicationFalsePositiveRate(double deduplicationFalsePositiveRate) {
+		this.deduplicationFalsePositiveRate = deduplicationFalsePositiveRate;
+	}
+	
+	/**
+	 * The name of this writer, used as prefix for its keys in the execution context.
+	 */
+	public void setName(String name) {
+		ecSupport.setName(name);
+	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		Assert.notNull(mongo, "A Mongo instance is required");
 		Assert.hasText( db, "A database name is required" );
 		Assert.hasText( collection, "A collection name is required" );
+		Assert.isTrue( encodingSliceSize > 0, "The encoding slice size must be positive" );
+		Assert.isTrue( spillBatchSize > 0, "The spill batch size must be positive" );
+		Assert.isTrue( journalSegmentSize > 0, "The journal segment size must be positive" );
+		Assert.isTrue( !collection.equals(stagingCollection), "The staging collection must differ from the collection" );
+		Assert.isTrue( checkpointInterval >= 0 && checkpointDelay >= 0, "The checkpoint thresholds must not be negative" );
+		Assert.isTrue( retryLimit >= 0, "The retry limit must not be negative" );
+		Assert.isTrue( retryLimit == 0 || assignIds, "Retrying inserts requires client-side ids (assignIds)" );
+		Assert.isTrue( retryBackoff >= 0 && retryBackoffMultiplier >= 1, "Invalid retry backoff" );
+		Assert.isTrue( !deduplicationAcrossStep || deduplicationKey != null, "Deduplication requires a key" );
+		Assert.isTrue( deduplicationFalsePositiveRate > 0 && deduplicationFalsePositiveRate < 1, 
+			"The false positive rate must be between 0 and 1" );
+	}
+
+	/**
+	 * Drops a staging collection that is left over from another job instance.
+	 */
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		final ExecutionContext executionContext = stepExecution.getExecutionContext();
+		final String key = ecSupport.getKey(STAGING);
+		
+		if ( stagingCollection != null && !executionContext.containsKey(key) ) {
+			mongo.getDB(db).getCollection(stagingCollection).drop();
+			executionContext.putString(key, stagingCollection);
+		}
+		
+		chunkCount = 0;
+		checkpointChunk = 1;
+		checkpointTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Inserts the documents that are still in the coalescing buffer, runs a final checkpoint and replaces 
+	 * the target collection by the staging collection if the step has completed.
+	 */
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		ExitStatus exitStatus = flushCoalesceBuffer(stepExecution);
+		
+		if ( isCheckpointing() ) {
+			try {
+				checkpoint();
+			} catch (MongoDBInsertFailedException e) {
+				stepExecution.upgradeStatus(BatchStatus.FAILED);
+				stepExecution.addFailureException(e);
+				exitStatus = ExitStatus.FAILED;
+			}
+		}
+		
+		if ( exitStatus == null && stagingCollection != null && stepExecution.getStatus() == BatchStatus.COMPLETED ) {
+			return swapStagingCollection(stepExecution);
+		}
+		
+		return exitStatus;
 	}
 
 	@Override
@@ -198,16 +1228,23 @@ public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean,
 
 	@Override
 	public void afterChunk() {
+		final Throwable failure = mongoDbFailure.get();
 		try {
-			if (mongoDbFailure != null){
-				if (mongoDbFailure instanceof MongoDBInsertFailedException){
-					throw (MongoDBInsertFailedException)mongoDbFailure;
+			if (failure != null){
+				if (failure instanceof MongoDBInsertFailedException){
+					throw (MongoDBInsertFailedException)failure;
 				} else {
-					throw new MongoDBInsertFailedException(db, collection, "Could not insert document/s into collection", mongoDbFailure);
+					throw new MongoDBInsertFailedException(db, collection, "Could not insert document/s into collection", failure);
 				}
 			}
 		} finally {
-			mongoDbFailure = null;
+			mongoDbFailure.remove();
+		}
+		
+		chunkCount++;
+		if ( (checkpointInterval > 0 && chunkCount - checkpointChunk + 1 >= checkpointInterval)
+				|| (checkpointDelay > 0 && System.currentTimeMillis() - checkpointTime >= checkpointDelay) ) {
+			checkpoint();
 		}
 	}
 
@@ -220,12 +1257,170 @@ public class MongoDBItemWriter implements ItemWriter<Object>, InitializingBean,
 	 * @param docs List of documents to insert.
 	 */
 	 protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
-		WriteResult wr = mongo.getDB(databaseName).getCollection(collectionName).insert(docs, wc);
+		// pre-encoded, spilled and journaled documents are written as they are, all others with the encoder 
+		// of the collection
+		final DBCollection coll = mongo.getDB(databaseName).getCollection(collectionName);
+		WriteResult wr = containsPreEncoded(docs) ? coll.insert(docs, wc, new PreEncodedDBEncoder()) : coll.insert(docs, wc);
 		
 		// strange: if no documents are written (list null or empty) the write result is also null
-		if ( checkWriteResult &&  wr != null && wr.getError() != null ) {
+		// unacknowledged inserts are checked at the next checkpoint
+		if ( checkWriteResult &&  wr != null && !(isCheckpointing() && wr.isLazy()) && wr.getError() != null ) {
 			throw new MongoDBInsertFailedException(databaseName, collectionName, wr.getError() );
 		}
 	}
 	
+	/**
+	 * Encoder that writes the bytes of pre-encoded documents and encodes all others. It is not thread-safe.
+	 */
+	private static class PreEncodedDBEncoder implements DBEncoder {
+		
+		private final DBEncoder encoder = DefaultDBEncoder.FACTORY.create();
+		
+		@Override
+		public int writeObject(OutputBuffer buf, BSONObject o) {
+			if (o instanceof LazyDBObject) {
+				try {
+					return ((LazyDBObject)o).pipe(buf);
+				} catch (IOException e) {
+					throw new MongoException("Could not write pre-encoded document", e);
+				}
+			}
+			return encoder.writeObject(buf, o);
+		}
+		
+	}
+	
+	/** Documents of a chunk that are ready to be coalesced or inserted. */
+	static class PreparedChunk {
+		
+		/** The documents of the chunk. */
+		private final List<DBObject> docs;
+		
+		/** Deduplication keys of the documents. */
+		private final List<Object> keys;
+		
+		private PreparedChunk(List<DBObject> docs, List<Object> keys) {
+			this.docs = docs;
+			this.keys = keys;
+		}
+		
+	}
+	
+	/**
+	 * The documents written within one transaction. They are inserted after the transaction
+	 * has been committed.
+	 */
+	private class TransactionalDocuments extends TransactionSynchronizationAdapter {
+		
+		private final WriteConcern wc;
+		
+		/** Documents of the chunks written in this transaction (only kept when coalescing). */
+		private final List<DBObject> written = new ArrayList<DBObject>();
+		
+		/** Documents to insert after commit. */
+		private final List<DBObject> pending = new ArrayList<DBObject>();
+		
+		/** BSON size of the pending documents, only computed if a spill threshold is set. */
+		private long pendingBytes;
+		
+		/** Pending documents that were spilled to disk. */
+		private BsonSpillFile spillFile;
+		
+		/** Sequence numbers of the journal records of this transaction. */
+		private final List<Long> journalSequences = new ArrayList<Long>();
+		
+		/** Deduplication keys of the documents written in this transaction. */
+		private final List<Object> keys = new ArrayList<Object>();
+		
+		private TransactionalDocuments(WriteConcern wc) {
+			this.wc = wc;
+		}
+		
+		private void add(List<DBObject> docs, List<DBObject> batch, List<Object> chunkKeys) throws IOException {
+			keys.addAll(chunkKeys);
+			if ( isCoalescing() ) {
+				written.addAll(docs);
+			}
+			
+			if (batch == null) {
+				return;
+			}
+			
+			if ( journal != null && !batch.isEmpty() ) {
+				for (DBObject doc: batch) {
+					assignId(doc);
+				}
+				journalSequences.add( journal.append(batch) );
+			}
+			
+			if (spillFile != null) {
+				for (DBObject doc: batch) {
+					// spilled documents are read back read-only, so the driver cannot add an _id
+					assignId(doc);
+					spillFile.append(doc);
+				}
+				return;
+			}
+			
+			pending.addAll(batch);
+			if ( spillThreshold > 0 && !isCoalescing() ) {
+				final DBEncoder encoder = DefaultDBEncoder.FACTORY.create();
+				for (DBObject doc: batch) {
+					pendingBytes += bsonSize(doc, encoder);
+				}
+				if (pendingBytes > spillThreshold) {
+					spill();
+				}
+			}
+		}
+		
+		private void spill() throws IOException {
+			spillFile = new BsonSpillFile(spillDirectory, new PreEncodedDBEncoder());
+			for (DBObject doc: pending) {
+				assignId(doc);
+				spillFile.append(doc);
+			}
+			pending.clear();
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(MongoDBItemWriter.this);
+			try {
+				if (status == STATUS_COMMITTED) {
+					if (spillFile != null) {
+						for (List<DBObject> docs = spillFile.read(spillBatchSize); !docs.isEmpty(); 
+								docs = spillFile.read(spillBatchSize)) {
+							insert(getTargetCollection(), wc, docs);
+						}
+					} else if ( !pending.isEmpty() ) {
+						insert(getTargetCollection(), wc, pending);
+					}
+					completeJournal();
+					rememberKeys(keys);
+				} else {
+					completeJournal();
+					if ( isCoalescing() ) {
+						rollbackCoalesceBuffer(written, pending.isEmpty() ? null : pending);
+					}
+				}
+			} catch (Throwable t) {
+				mongoDbFailure.set(t);
+			} finally {
+				if (spillFile != null) {
+					spillFile.close();
+				}
+			}
+		}
+		
+		private void completeJournal() {
+			if (journal != null) {
+				for (long seq: journalSequences) {
+					journal.complete(seq);
+				}
+			}
+		}
+		
+	}
+	
 }
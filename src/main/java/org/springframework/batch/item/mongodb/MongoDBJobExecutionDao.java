@@ -0,0 +1,196 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.repository.dao.JobExecutionDao;
+import org.springframework.batch.core.repository.dao.JobInstanceDao;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * {@link JobExecutionDao} that stores job executions in the collection <code>&lt;prefix&gt;job_execution</code>.
+ * <p/>
+ * Updates are done with a single <code>findAndModify</code> that matches the version of the execution and
+ * increments it, so a concurrent modification is detected without an additional round trip.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link com.mongodb.Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #jobInstanceDao}: DAO to read the job instances of the executions.</li>
+ * </ul>
+ */
+public class MongoDBJobExecutionDao extends AbstractMongoDBDao implements JobExecutionDao {
+
+	static final String JOB_INSTANCE_ID = "jobInstanceId";
+	
+	private static final String JOB_NAME = "jobName";
+	
+	private static final String CREATE_TIME = "createTime";
+	
+	private static final String START_TIME = "startTime";
+	
+	private static final String END_TIME = "endTime";
+	
+	private static final String STATUS = "status";
+	
+	private static final String EXIT_CODE = "exitCode";
+	
+	private static final String EXIT_MESSAGE = "exitMessage";
+	
+	private static final String LAST_UPDATED = "lastUpdated";
+	
+	// configurable attributes ......................................
+	
+	/** DAO to read the job instances of the executions. */
+	protected JobInstanceDao jobInstanceDao;
+	
+	@Override
+	public void saveJobExecution(JobExecution jobExecution) {
+		Assert.notNull(jobExecution, "JobExecution cannot be null.");
+		Assert.notNull(jobExecution.getJobId(), "JobExecution Job-Id cannot be null.");
+		Assert.isNull(jobExecution.getId(), "JobExecution is already saved");
+		
+		jobExecution.setId( nextId(JOB_EXECUTION) );
+		jobExecution.incrementVersion();
+		
+		final DBObject doc = toDBObject(jobExecution)
+			.append(ID, jobExecution.getId())
+			.append(VERSION, jobExecution.getVersion())
+			.append(JOB_INSTANCE_ID, jobExecution.getJobId())
+			.append(JOB_NAME, jobExecution.getJobInstance().getJobName())
+			.append(CREATE_TIME, jobExecution.getCreateTime());
+		
+		getCollection(JOB_EXECUTION).insert(doc, WRITE_CONCERN);
+	}
+
+	@Override
+	public void updateJobExecution(JobExecution jobExecution) {
+		Assert.notNull(jobExecution.getId(), "JobExecution ID cannot be null. JobExecution must be saved before it can be updated");
+		Assert.notNull(jobExecution.getVersion(), "JobExecution version cannot be null. JobExecution must be saved before it can be updated");
+		
+		final DBObject updated = getCollection(JOB_EXECUTION).findAndModify(
+			new BasicDBObject(ID, jobExecution.getId()).append(VERSION, jobExecution.getVersion()), 
+			new BasicDBObject(ID, 1), null, false, 
+			new BasicDBObject("$set", toDBObject(jobExecution)).append("$inc", new BasicDBObject(VERSION, 1)), 
+			false, false);
+		
+		if (updated == null) {
+			throw new OptimisticLockingFailureException("Attempt to update job execution id=" + jobExecution.getId()
+				+ " with wrong version (" + jobExecution.getVersion() + ")");
+		}
+		
+		jobExecution.incrementVersion();
+	}
+
+	@Override
+	public List<JobExecution> findJobExecutions(JobInstance jobInstance) {
+		Assert.notNull(jobInstance, "Job cannot be null.");
+		Assert.notNull(jobInstance.getId(), "Job Id cannot be null.");
+		
+		return find(new BasicDBObject(JOB_INSTANCE_ID, jobInstance.getId()), jobInstance, 0);
+	}
+
+	@Override
+	public JobExecution getLastJobExecution(JobInstance jobInstance) {
+		final List<JobExecution> jobExecutions = find(new BasicDBObject(JOB_INSTANCE_ID, jobInstance.getId()), jobInstance, 1);
+		return jobExecutions.isEmpty() ? null : jobExecutions.get(0);
+	}
+
+	@Override
+	public Set<JobExecution> findRunningJobExecutions(String jobName) {
+		return new HashSet<JobExecution>( find(
+			new BasicDBObject(JOB_NAME, jobName).append(END_TIME, null).append(START_TIME, new BasicDBObject("$ne", null)), 
+			null, 0) );
+	}
+
+	@Override
+	public JobExecution getJobExecution(Long executionId) {
+		final List<JobExecution> jobExecutions = find(new BasicDBObject(ID, executionId), null, 1);
+		return jobExecutions.isEmpty() ? null : jobExecutions.get(0);
+	}
+
+	@Override
+	public void synchronizeStatus(JobExecution jobExecution) {
+		final DBObject doc = getCollection(JOB_EXECUTION).findOne(new BasicDBObject(ID, jobExecution.getId()), 
+			new BasicDBObject(VERSION, 1).append(STATUS, 1));
+		
+		if (doc != null) {
+			final int version = getInt(doc, VERSION);
+			if ( jobExecution.getVersion() == null || version != jobExecution.getVersion().intValue() ) {
+				jobExecution.upgradeStatus( BatchStatus.valueOf((String)doc.get(STATUS)) );
+				jobExecution.setVersion(version);
+			}
+		}
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * @return The mutable attributes of the execution.
+	 */
+	private static BasicDBObject toDBObject(JobExecution jobExecution) {
+		return new BasicDBObject(START_TIME, jobExecution.getStartTime())
+			.append(END_TIME, jobExecution.getEndTime())
+			.append(STATUS, jobExecution.getStatus().name())
+			.append(EXIT_CODE, jobExecution.getExitStatus().getExitCode())
+			.append(EXIT_MESSAGE, jobExecution.getExitStatus().getExitDescription())
+			.append(LAST_UPDATED, jobExecution.getLastUpdated());
+	}
+	
+	/**
+	 * @param jobInstance The job instance of the executions, read if <code>null</code>.
+	 * @return The executions, latest first.
+	 */
+	private List<JobExecution> find(DBObject query, JobInstance jobInstance, int limit) {
+		final List<JobExecution> jobExecutions = new ArrayList<JobExecution>();
+		final DBCursor cursor = getCollection(JOB_EXECUTION).find(query, new BasicDBObject(CONTEXT, 0))
+			.sort(new BasicDBObject(ID, -1)).limit(limit);
+		try {
+			while ( cursor.hasNext() ) {
+				final DBObject doc = cursor.next();
+				final JobInstance instance = jobInstance != null 
+					? jobInstance : jobInstanceDao.getJobInstance(getLong(doc, JOB_INSTANCE_ID));
+				
+				final JobExecution jobExecution = new JobExecution(instance, getLong(doc, ID));
+				jobExecution.setStartTime( getDate(doc, START_TIME) );
+				jobExecution.setEndTime( getDate(doc, END_TIME) );
+				jobExecution.setStatus( BatchStatus.valueOf((String)doc.get(STATUS)) );
+				jobExecution.setExitStatus( new ExitStatus((String)doc.get(EXIT_CODE), (String)doc.get(EXIT_MESSAGE)) );
+				jobExecution.setCreateTime( getDate(doc, CREATE_TIME) );
+				jobExecution.setLastUpdated( getDate(doc, LAST_UPDATED) );
+				jobExecution.setVersion( getInt(doc, VERSION) );
+				jobExecutions.add(jobExecution);
+			}
+		} finally {
+			cursor.close();
+		}
+		return jobExecutions;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setJobInstanceDao(JobInstanceDao jobInstanceDao) {
+		this.jobInstanceDao = jobInstanceDao;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		Assert.notNull(jobInstanceDao, "A JobInstanceDao is required");
+		getCollection(JOB_EXECUTION).ensureIndex( new BasicDBObject(JOB_INSTANCE_ID, 1) );
+		getCollection(JOB_EXECUTION).ensureIndex( new BasicDBObject(JOB_NAME, 1).append(END_TIME, 1) );
+	}
+	
+}
@@ -0,0 +1,182 @@
+package org.springframework.batch.item.mongodb;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameter;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.repository.dao.JobInstanceDao;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * {@link JobInstanceDao} that stores job instances in the collection <code>&lt;prefix&gt;job_instance</code>.
+ * A unique index on the job name and a hash of the identifying job parameters prevents duplicate instances.
+ */
+public class MongoDBJobInstanceDao extends AbstractMongoDBDao implements JobInstanceDao {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final String JOB_NAME = "jobName";
+	
+	private static final String JOB_KEY = "jobKey";
+	
+	private static final String PARAMETERS = "parameters";
+	
+	@Override
+	public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+		Assert.notNull(jobName, "Job name must not be null.");
+		Assert.notNull(jobParameters, "JobParameters must not be null.");
+		Assert.state(getJobInstance(jobName, jobParameters) == null, "JobInstance must not already exist");
+		
+		final JobInstance jobInstance = new JobInstance(nextId(JOB_INSTANCE), jobParameters, jobName);
+		jobInstance.incrementVersion();
+		
+		final DBObject doc = new BasicDBObject(ID, jobInstance.getId())
+			.append(VERSION, jobInstance.getVersion())
+			.append(JOB_NAME, jobName)
+			.append(JOB_KEY, createJobKey(jobParameters))
+			.append(PARAMETERS, toDBList(jobParameters));
+		try {
+			getCollection(JOB_INSTANCE).insert(doc, WRITE_CONCERN);
+		} catch (MongoException.DuplicateKey e) {
+			throw new DuplicateKeyException("JobInstance already exists: " + jobName + " " + jobParameters, e);
+		}
+		
+		return jobInstance;
+	}
+
+	@Override
+	public JobInstance getJobInstance(String jobName, JobParameters jobParameters) {
+		return toJobInstance( getCollection(JOB_INSTANCE).findOne(
+			new BasicDBObject(JOB_NAME, jobName).append(JOB_KEY, createJobKey(jobParameters))) );
+	}
+
+	@Override
+	public JobInstance getJobInstance(Long instanceId) {
+		return toJobInstance( getCollection(JOB_INSTANCE).findOne(new BasicDBObject(ID, instanceId)) );
+	}
+
+	@Override
+	public JobInstance getJobInstance(JobExecution jobExecution) {
+		final DBObject execution = getCollection(JOB_EXECUTION).findOne(
+			new BasicDBObject(ID, jobExecution.getId()), new BasicDBObject(MongoDBJobExecutionDao.JOB_INSTANCE_ID, 1));
+		
+		return execution == null ? null : getJobInstance(getLong(execution, MongoDBJobExecutionDao.JOB_INSTANCE_ID));
+	}
+
+	@Override
+	public List<JobInstance> getJobInstances(String jobName, int start, int count) {
+		final List<JobInstance> jobInstances = new ArrayList<JobInstance>();
+		final DBCursor cursor = getCollection(JOB_INSTANCE).find(new BasicDBObject(JOB_NAME, jobName))
+			.sort(new BasicDBObject(ID, -1)).skip(start).limit(count);
+		try {
+			while ( cursor.hasNext() ) {
+				jobInstances.add( toJobInstance(cursor.next()) );
+			}
+		} finally {
+			cursor.close();
+		}
+		return jobInstances;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getJobNames() {
+		final List<String> jobNames = new ArrayList<String>( getCollection(JOB_INSTANCE).distinct(JOB_NAME) );
+		Collections.sort(jobNames);
+		return jobNames;
+	}
+	
+	// private methods .....................................................
+	
+	private static JobInstance toJobInstance(DBObject doc) {
+		if (doc == null) {
+			return null;
+		}
+		
+		final JobInstance jobInstance = new JobInstance(getLong(doc, ID), toJobParameters(doc.get(PARAMETERS)), 
+			(String)doc.get(JOB_NAME));
+		jobInstance.setVersion( getInt(doc, VERSION) );
+		return jobInstance;
+	}
+	
+	/**
+	 * @return A hash of the job parameters that does not depend on their order.
+	 */
+	static String createJobKey(JobParameters jobParameters) {
+		final StringBuilder key = new StringBuilder();
+		
+		for (Map.Entry<String, JobParameter> entry: 
+				new TreeMap<String, JobParameter>(jobParameters.getParameters()).entrySet()) {
+			final JobParameter parameter = entry.getValue();
+			final Object value = parameter.getValue();
+			key.append(entry.getKey()).append('=')
+				.append(value instanceof Date ? String.valueOf(((Date)value).getTime()) : String.valueOf(value))
+				.append(';');
+		}
+		
+		return DigestUtils.md5DigestAsHex( key.toString().getBytes(UTF8) );
+	}
+	
+	private static BasicDBList toDBList(JobParameters jobParameters) {
+		final BasicDBList list = new BasicDBList();
+		
+		for (Map.Entry<String, JobParameter> entry: jobParameters.getParameters().entrySet()) {
+			list.add( new BasicDBObject("k", entry.getKey())
+				.append("t", entry.getValue().getType().name())
+				.append("v", entry.getValue().getValue()) );
+		}
+		
+		return list;
+	}
+	
+	private static JobParameters toJobParameters(Object list) {
+		final Map<String, JobParameter> parameters = new LinkedHashMap<String, JobParameter>();
+		
+		if (list instanceof BasicDBList) {
+			for (Object o: (BasicDBList)list) {
+				final DBObject doc = (DBObject)o;
+				final String type = (String)doc.get("t");
+				final Object value = doc.get("v");
+				
+				final JobParameter parameter;
+				if ( "LONG".equals(type) ) {
+					parameter = new JobParameter( ((Number)value).longValue() );
+				} else if ( "DOUBLE".equals(type) ) {
+					parameter = new JobParameter( ((Number)value).doubleValue() );
+				} else if ( "DATE".equals(type) ) {
+					parameter = new JobParameter( (Date)value );
+				} else {
+					parameter = new JobParameter( (String)value );
+				}
+				parameters.put((String)doc.get("k"), parameter);
+			}
+		}
+		
+		return new JobParameters(parameters);
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		getCollection(JOB_INSTANCE).ensureIndex( new BasicDBObject(JOB_NAME, 1).append(JOB_KEY, 1), 
+			new BasicDBObject("unique", true) );
+	}
+	
+}
@@ -0,0 +1,115 @@
+package org.springframework.batch.item.mongodb;
+
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.SimpleJobExplorer;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.core.repository.dao.JobExecutionDao;
+import org.springframework.batch.core.repository.dao.JobInstanceDao;
+import org.springframework.batch.core.repository.dao.StepExecutionDao;
+import org.springframework.batch.core.repository.support.AbstractJobRepositoryFactoryBean;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.util.Assert;
+
+import com.mongodb.Mongo;
+
+/**
+ * Factory bean for a {@link org.springframework.batch.core.repository.JobRepository} that stores the batch
+ * meta data in MongoDB. The repository uses a {@link ResourcelessTransactionManager} unless another one is set.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #collectionPrefix}: Prefix of the collection names, defaults to <code>batch_</code>.</li>
+ * </ul>
+ */
+public class MongoDBJobRepositoryFactoryBean extends AbstractJobRepositoryFactoryBean {
+
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Prefix of the collection names. */
+	protected String collectionPrefix = AbstractMongoDBDao.DEFAULT_COLLECTION_PREFIX;
+	
+	// internally used attributes ......................................
+	
+	private MongoDBJobInstanceDao jobInstanceDao;
+	
+	public MongoDBJobRepositoryFactoryBean() {
+		setTransactionManager( new ResourcelessTransactionManager() );
+	}
+	
+	@Override
+	protected JobInstanceDao createJobInstanceDao() throws Exception {
+		if (jobInstanceDao == null) {
+			jobInstanceDao = init( new MongoDBJobInstanceDao() );
+		}
+		return jobInstanceDao;
+	}
+
+	@Override
+	protected JobExecutionDao createJobExecutionDao() throws Exception {
+		final MongoDBJobExecutionDao dao = new MongoDBJobExecutionDao();
+		dao.setJobInstanceDao( createJobInstanceDao() );
+		return init(dao);
+	}
+
+	@Override
+	protected StepExecutionDao createStepExecutionDao() throws Exception {
+		return init( new MongoDBStepExecutionDao() );
+	}
+
+	@Override
+	protected ExecutionContextDao createExecutionContextDao() throws Exception {
+		return init( new MongoDBExecutionContextDao() );
+	}
+	
+	/**
+	 * @return An explorer of the repository, e.g. for a {@link MongoDBPartitionHandler}.
+	 */
+	public JobExplorer getJobExplorer() throws Exception {
+		return new SimpleJobExplorer(createJobInstanceDao(), createJobExecutionDao(), createStepExecutionDao(), 
+			createExecutionContextDao());
+	}
+	
+	// private methods .....................................................
+	
+	private <T extends AbstractMongoDBDao> T init(T dao) throws Exception {
+		dao.setMongo(mongo);
+		dao.setDb(db);
+		dao.setCollectionPrefix(collectionPrefix);
+		dao.afterPropertiesSet();
+		return dao;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollectionPrefix(String collectionPrefix) {
+		this.collectionPrefix = collectionPrefix;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		super.afterPropertiesSet();
+	}
+	
+}
@@ -0,0 +1,325 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.mongodb.DBObject;
+
+/**
+ * This item writer exports documents to a file with one JSON document per line, e.g. the documents read by a 
+ * {@link MongoDBItemReader}.
+ * <p/>
+ * Documents are encoded straight to UTF-8 bytes in a reusable buffer and written to a {@link FileChannel},
+ * without building a string per document. The notation is the one of {@link com.mongodb.util.JSON}.
+ * With {@link #gzip}, each chunk is written as a complete gzip member. The members of a file are read as one 
+ * stream by gzip tools and {@link java.util.zip.GZIPInputStream}.
+ * <p/>
+ * The byte offset after the last chunk is stored in the step's {@link ExecutionContext}. On restart, the file is
+ * truncated to this offset. If a transaction is active, the file is also truncated to the start of the chunk 
+ * when the transaction rolls back.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #resource}: The file to write to.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #gzip}: Compress the file, defaults to <code>false</code>.</li>
+ * <li>{@link #bufferSize}: Number of bytes encoded before they are written to the file, defaults to 1 MB.</li>
+ * <li>{@link #forceSync}: Force the file to disk after each chunk, defaults to <code>false</code>.</li>
+ * </ul>
+ */
+public class MongoDBJsonExportItemWriter implements ItemWriter<DBObject>, ItemStream, InitializingBean {
+
+	private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	
+	/** Key of the byte offset in the execution context. */
+	private static final String OFFSET = "offset";
+	
+	/** Magic number, compression method and flags of a gzip member header. */
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+	
+	// configurable attributes ......................................
+	
+	/** The file to write to. */
+	protected Resource resource;
+	
+	/** Flag to indicate that the file is gzip compressed. */
+	protected boolean gzip;
+	
+	/** Number of bytes encoded before they are written to the file. */
+	protected int bufferSize = DEFAULT_BUFFER_SIZE;
+	
+	/** Flag to indicate that the file is forced to disk after each chunk. */
+	protected boolean forceSync;
+	
+	// internally used attributes ......................................
+	
+	private final ExecutionContextUserSupport ecSupport = new ExecutionContextUserSupport();
+	
+	private RandomAccessFile raf;
+	
+	private FileChannel channel;
+	
+	private ExtendedJsonEncoder encoder;
+	
+	private ByteBuffer encoded;
+	
+	private Deflater deflater;
+	
+	private CRC32 crc;
+	
+	private byte[] compressed;
+	
+	private ByteBuffer compressedBuffer;
+	
+	public MongoDBJsonExportItemWriter() {
+		setName(ClassUtils.getShortName(MongoDBJsonExportItemWriter.class));
+	}
+	
+	@Override
+	public void write(List<? extends DBObject> items) throws Exception {
+		final long start = channel.position();
+		if ( TransactionSynchronizationManager.isSynchronizationActive() ) {
+			TransactionSynchronizationManager.registerSynchronization( new TruncateOnRollback(start) );
+		}
+		
+		try {
+			if (gzip) {
+				startMember();
+			}
+			
+			for (DBObject doc: items) {
+				encoder.writeLine(doc);
+				if ( encoder.length() >= bufferSize ) {
+					flushEncoded();
+				}
+			}
+			flushEncoded();
+			
+			if (gzip) {
+				finishMember();
+			}
+		} catch (IOException e) {
+			truncate(start);
+			throw e;
+		}
+		
+		if (forceSync) {
+			channel.force(false);
+		}
+	}
+	
+	// item stream interface ...............................................
+	
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		final String key = ecSupport.getKey(OFFSET);
+		final long offset = executionContext.containsKey(key) ? executionContext.getLong(key) : 0;
+		
+		try {
+			final File file = resource.getFile();
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if ( parent != null && !parent.isDirectory() && !parent.mkdirs() ) {
+				throw new IOException("Cannot create directory: " + parent);
+			}
+			
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+			if ( offset > channel.size() ) {
+				throw new ItemStreamException("File " + file + " is shorter than the restart offset " + offset);
+			}
+			truncate(offset);
+		} catch (IOException e) {
+			throw new ItemStreamException("Cannot open file for export: " + resource, e);
+		}
+		
+		encoder = new ExtendedJsonEncoder(bufferSize + bufferSize / 4);
+		if (gzip) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			crc = new CRC32();
+			compressed = new byte[Math.max(bufferSize / 2, 1024)];
+			compressedBuffer = ByteBuffer.wrap(compressed);
+		}
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			executionContext.putLong(ecSupport.getKey(OFFSET), channel.position());
+		} catch (IOException e) {
+			throw new ItemStreamException("Cannot get position in file: " + resource, e);
+		}
+	}
+
+	@Override
+	public void close() throws ItemStreamException {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		encoder = null;
+		encoded = null;
+		compressed = null;
+		compressedBuffer = null;
+		
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				throw new ItemStreamException("Cannot close file: " + resource, e);
+			} finally {
+				raf = null;
+				channel = null;
+			}
+		}
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * Writes the encoded bytes to the file, compressed if required.
+	 */
+	private void flushEncoded() throws IOException {
+		if ( encoder.length() == 0 ) {
+			return;
+		}
+		
+		final byte[] bytes = encoder.buffer();
+		if (gzip) {
+			crc.update(bytes, 0, encoder.length());
+			deflater.setInput(bytes, 0, encoder.length());
+			while ( !deflater.needsInput() ) {
+				writeCompressed( deflater.deflate(compressed) );
+			}
+		} else {
+			if ( encoded == null || encoded.array() != bytes ) {
+				encoded = ByteBuffer.wrap(bytes);
+			}
+			encoded.clear().limit(encoder.length());
+			writeFully(encoded);
+		}
+		
+		encoder.reset();
+	}
+	
+	private void startMember() throws IOException {
+		deflater.reset();
+		crc.reset();
+		writeFully( ByteBuffer.wrap(GZIP_HEADER) );
+	}
+	
+	/**
+	 * Writes the rest of the compressed data and the trailer with CRC and size of the member.
+	 */
+	private void finishMember() throws IOException {
+		deflater.finish();
+		while ( !deflater.finished() ) {
+			writeCompressed( deflater.deflate(compressed) );
+		}
+		
+		final long checksum = crc.getValue();
+		final long size = deflater.getBytesRead();
+		final byte[] trailer = new byte[8];
+		for (int i = 0; i < 4; i++) {
+			trailer[i] = (byte)(checksum >> (8 * i));
+			trailer[4 + i] = (byte)(size >> (8 * i));
+		}
+		writeFully( ByteBuffer.wrap(trailer) );
+	}
+	
+	private void writeCompressed(int n) throws IOException {
+		if (n > 0) {
+			compressedBuffer.clear().limit(n);
+			writeFully(compressedBuffer);
+		}
+	}
+	
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while ( buffer.hasRemaining() ) {
+			channel.write(buffer);
+		}
+	}
+	
+	private void truncate(long offset) throws IOException {
+		channel.truncate(offset);
+		channel.position(offset);
+	}
+	
+	// Setter ...............................................................
+	
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public void setForceSync(boolean forceSync) {
+		this.forceSync = forceSync;
+	}
+
+	/**
+	 * The name of this writer, used as prefix for its keys in the execution context.
+	 */
+	public void setName(String name) {
+		ecSupport.setName(name);
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull( resource, "A resource is required" );
+		Assert.isTrue( bufferSize > 0, "Buffer size must be positive" );
+	}
+	
+	/** Truncates the file to the start of a chunk if its transaction rolls back. */
+	private class TruncateOnRollback extends TransactionSynchronizationAdapter {
+		
+		private final long start;
+		
+		private TruncateOnRollback(long start) {
+			this.start = start;
+		}
+		
+		@Override
+		public void afterCompletion(int status) {
+			if (status == TransactionSynchronization.STATUS_ROLLED_BACK && channel != null) {
+				try {
+					truncate(start);
+				} catch (IOException e) {
+					throw new ItemStreamException("Cannot truncate file after rollback: " + resource, e);
+				}
+			}
+		}
+		
+	}
+	
+}
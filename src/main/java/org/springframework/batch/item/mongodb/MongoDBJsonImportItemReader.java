@@ -0,0 +1,237 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.mongodb.DBObject;
+
+/**
+ * This item reader reads documents from a file with one JSON document per line, e.g. for a {@link MongoDBItemWriter}.
+ * <p/>
+ * The file is memory-mapped in windows and each line is parsed straight from the mapped bytes to a {@link DBObject},
+ * without building a string for the line. The notation is the one of {@link com.mongodb.util.JSON}, including 
+ * <code>$oid</code>, <code>$date</code> and the other extended types, and the one written by 
+ * {@link MongoDBJsonExportItemWriter}. Blank lines are skipped, a line that cannot be parsed causes a 
+ * {@link ParseException} that can be skipped.
+ * <p/>
+ * The reader may read a segment of the file only, from {@link #startOffset} up to {@link #endOffset}. Together with
+ * {@link MongoDBJsonLinesPartitioner}, which splits a file into line-aligned segments, a file can be read by 
+ * several partitions in parallel. The byte offset after the last read line is stored in the step's 
+ * {@link ExecutionContext}, so a restarted step continues there without reading the lines before.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #resource}: The file to read.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #startOffset}: Byte offset of the first line to read, defaults to 0.</li>
+ * <li>{@link #endOffset}: Byte offset after the last line to read, defaults to the end of the file.</li>
+ * <li>{@link #windowSize}: Number of bytes mapped at a time, defaults to 64 MB. Longer lines are mapped 
+ * 		as a whole.</li>
+ * </ul>
+ */
+public class MongoDBJsonImportItemReader 
+	extends AbstractItemCountingItemStreamItemReader<DBObject> 
+	implements InitializingBean {
+
+	private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	/** Key of the byte offset in the execution context. */
+	private static final String OFFSET = "offset";
+	
+	// configurable attributes ......................................
+	
+	/** The file to read. */
+	protected Resource resource;
+	
+	/** Byte offset of the first line to read. */
+	protected long startOffset;
+	
+	/** Byte offset after the last line to read, negative for the end of the file. */
+	protected long endOffset = -1;
+	
+	/** Number of bytes mapped at a time. */
+	protected int windowSize = DEFAULT_WINDOW_SIZE;
+	
+	// internally used attributes ......................................
+	
+	private final ExtendedJsonParser parser = new ExtendedJsonParser();
+	
+	private RandomAccessFile raf;
+	
+	private MappedByteBuffer window;
+	
+	private long windowStart;
+	
+	/** Byte offset of the next line. */
+	private long position;
+	
+	/** Byte offset after the last line to read. */
+	private long end;
+	
+	/** Byte offset to restart at, negative if not restarted. */
+	private long restartOffset = -1;
+	
+	// public item reader interface .........................................
+	
+	public MongoDBJsonImportItemReader() {
+		setName(ClassUtils.getShortName(MongoDBJsonImportItemReader.class));
+	}
+	
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		final String key = getExecutionContextUserSupport().getKey(OFFSET);
+		restartOffset = executionContext.containsKey(key) ? executionContext.getLong(key) : -1;
+		super.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		super.update(executionContext);
+		if ( isSaveState() ) {
+			executionContext.putLong(getExecutionContextUserSupport().getKey(OFFSET), position);
+		}
+	}
+	
+	@Override
+	protected void doOpen() throws Exception {
+		raf = new RandomAccessFile(resource.getFile(), "r");
+		final long size = raf.length();
+		
+		end = endOffset < 0 ? size : Math.min(endOffset, size);
+		position = Math.min(startOffset, end);
+		window = null;
+	}
+
+	@Override
+	protected void jumpToItem(int itemIndex) throws Exception {
+		if (restartOffset >= 0) {
+			position = restartOffset;
+		} else {
+			super.jumpToItem(itemIndex);
+		}
+	}
+	
+	@Override
+	protected DBObject doRead() throws Exception {
+		while (position < end) {
+			final long lineStart = position;
+			final long lineEnd = findLineEnd();
+			position = Math.min(lineEnd + 1, end);
+			
+			final int from = (int)(lineStart - windowStart);
+			final int to = (int)(lineEnd - windowStart);
+			if ( isBlank(from, to) ) {
+				continue;
+			}
+			
+			try {
+				return parser.parse(window, from, to);
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Cannot parse line at byte offset " + lineStart + " of " + resource 
+					+ ": " + e.getMessage(), e);
+			}
+		}
+		
+		return null;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		window = null;
+		if (raf != null) {
+			raf.close();
+			raf = null;
+		}
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * Maps the line at the current position and finds its end.
+	 * 
+	 * @return Byte offset of the newline after the line or the end of the segment.
+	 */
+	private long findLineEnd() throws IOException {
+		int mapSize = windowSize;
+		if ( window == null || position < windowStart || position >= windowStart + window.limit() ) {
+			map(position, mapSize);
+		}
+		
+		while (true) {
+			final int limit = window.limit();
+			for (int i = (int)(position - windowStart); i < limit; i++) {
+				if ( window.get(i) == '\n' ) {
+					return windowStart + i;
+				}
+			}
+			
+			if ( windowStart + limit >= end ) {
+				return end;
+			}
+			
+			// the line crosses the end of the window, map again from the line start with enough room
+			if (windowStart == position) {
+				if (mapSize == Integer.MAX_VALUE) {
+					throw new ParseException("Line at byte offset " + position + " of " + resource + " is too long");
+				}
+				mapSize = (int)Math.min(Integer.MAX_VALUE, 2L * mapSize);
+			}
+			map(position, mapSize);
+		}
+	}
+	
+	private void map(long start, int size) throws IOException {
+		windowStart = start;
+		window = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, end - start));
+	}
+	
+	private boolean isBlank(int from, int to) {
+		for (int i = from; i < to; i++) {
+			final byte b = window.get(i);
+			if (b != ' ' && b != '\t' && b != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	public void setStartOffset(long startOffset) {
+		this.startOffset = startOffset;
+	}
+
+	public void setEndOffset(long endOffset) {
+		this.endOffset = endOffset;
+	}
+
+	public void setWindowSize(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull( resource, "A resource is required" );
+		Assert.isTrue( startOffset >= 0, "Start offset must not be negative" );
+		Assert.isTrue( windowSize > 0, "Window size must be positive" );
+	}
+	
+}
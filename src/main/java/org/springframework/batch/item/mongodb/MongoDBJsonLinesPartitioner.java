@@ -0,0 +1,114 @@
+package org.springframework.batch.item.mongodb;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Splits a JSON-lines file into segments of about the same size that start and end at line boundaries, 
+ * so each segment can be read by a {@link MongoDBJsonImportItemReader} in its own partition.
+ * <p/>
+ * The execution context of each partition holds the offsets of its segment under the keys 
+ * {@link #START_OFFSET} and {@link #END_OFFSET}, e.g. for 
+ * <code>#{stepExecutionContext['startOffset']}</code> in a step scoped reader.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #resource}: The file to split.</li>
+ * </ul>
+ */
+public class MongoDBJsonLinesPartitioner implements Partitioner, InitializingBean {
+
+	/** Key of the byte offset of the first line of a segment. */
+	public static final String START_OFFSET = "startOffset";
+	
+	/** Key of the byte offset after the last line of a segment. */
+	public static final String END_OFFSET = "endOffset";
+	
+	private static final String PARTITION_PREFIX = "partition";
+	
+	/** Number of bytes read at a time when looking for the end of a line. */
+	private static final int SCAN_BUFFER_SIZE = 8192;
+	
+	// configurable attributes ......................................
+	
+	/** The file to split. */
+	protected Resource resource;
+	
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		final Map<String, ExecutionContext> partitions = new LinkedHashMap<String, ExecutionContext>();
+		
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(resource.getFile(), "r");
+			try {
+				final long size = raf.length();
+				long start = 0;
+				
+				for (int i = 1; i <= gridSize && start < size; i++) {
+					final long end = i == gridSize ? size : nextLineStart(raf, Math.max(start, size * i / gridSize), size);
+					if (end > start) {
+						final ExecutionContext context = new ExecutionContext();
+						context.putLong(START_OFFSET, start);
+						context.putLong(END_OFFSET, end);
+						partitions.put(PARTITION_PREFIX + partitions.size(), context);
+					}
+					start = end;
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot split file " + resource, e);
+		}
+		
+		return partitions;
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * @return Byte offset after the first newline at or after the given offset, or the size of the file.
+	 */
+	private static long nextLineStart(RandomAccessFile raf, long offset, long size) throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+		
+		// a newline right before the offset makes the offset a line start
+		final byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		long position = offset - 1;
+		
+		while (position < size) {
+			raf.seek(position);
+			final int n = raf.read(buffer, 0, (int)Math.min(buffer.length, size - position));
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += n;
+		}
+		
+		return size;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull( resource, "A resource is required" );
+	}
+	
+}
@@ -0,0 +1,318 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * This item processor enriches documents with documents looked up from a reference collection.
+ * <p/>
+ * The value of the field {@link #keyField} of a document is looked up in the field {@link #lookupField} of the 
+ * reference {@link #collection}. Register the processor as listener of the step, too: it then collects the keys
+ * of all documents read for a chunk, and the first lookup of the chunk resolves all of them with one 
+ * <code>$in</code> query. Without the listener, each key that is not cached is looked up on its own.
+ * <p/>
+ * The reference documents are kept in an LRU cache of {@link #cacheSize} entries that is shared by all chunks. 
+ * Entries expire after {@link #cacheTtl} milliseconds. Keys without reference document are cached as well, 
+ * so they are not looked up again.
+ * <p/>
+ * A reference document is stored in the field {@link #targetField} of the document, or its fields are copied into
+ * the document if no target field is set. Documents without reference document are passed unchanged or, 
+ * if {@link #filterMissing} is set, filtered.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #collection}: Name of the reference collection.</li>
+ * <li>{@link #keyField}: Name of the field of the processed documents that holds the key.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #lookupField}: Name of the key field of the reference documents. Defaults to <code>_id</code>.</li>
+ * <li>{@link #keys}: the fields of the reference documents to read in JSON notation, e.g. 
+ * 		<code>{name: 1, rate: 1}</code>.</li>
+ * <li>{@link #targetField}: Name of the field the reference document is stored in.</li>
+ * <li>{@link #filterMissing}: Filter documents without reference document.</li>
+ * <li>{@link #cacheSize}: Maximum number of cached keys. Defaults to 10000.</li>
+ * <li>{@link #cacheTtl}: Milliseconds a cached reference document is valid. Defaults to 0 (no expiry).</li>
+ * </ul>
+ */
+public class MongoDBLookupItemProcessor implements ItemProcessor<DBObject, DBObject>, ItemReadListener<DBObject>, 
+	InitializingBean {
+
+	/** By default, up to 10000 keys are cached. */
+	private static final int DEFAULT_CACHE_SIZE = 10000;
+	
+	private static final String DEFAULT_LOOKUP_FIELD = "_id";
+	
+	/** Cached value of keys without reference document. */
+	private static final DBObject MISSING = new BasicDBObject();
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the reference collection. */
+	protected String collection;
+	
+	/** Name of the field of the processed documents that holds the key. */
+	protected String keyField;
+	
+	/** Name of the key field of the reference documents. */
+	protected String lookupField = DEFAULT_LOOKUP_FIELD;
+	
+	/** JSON document that filters the fields of the reference documents (optional). */
+	protected String keys;
+	
+	/** Name of the field the reference document is stored in (optional). */
+	protected String targetField;
+	
+	/** Flag to indicate that documents without reference document should be filtered. */
+	protected boolean filterMissing;
+	
+	/** Maximum number of cached keys. */
+	protected int cacheSize = DEFAULT_CACHE_SIZE;
+	
+	/** Milliseconds a cached reference document is valid. */
+	protected long cacheTtl;
+	
+	// internally used attributes ......................................
+	
+	/** Keys of read documents that are not looked up yet. */
+	private final Set<Object> pendingKeys = new LinkedHashSet<Object>();
+	
+	private Map<Object, CacheEntry> cache;
+	
+	private DBObject projection;
+	
+	// item processor interface .........................................
+	
+	@Override
+	public DBObject process(DBObject item) throws Exception {
+		final Object key = item.get(keyField);
+		if (key == null) {
+			return filterMissing ? null : item;
+		}
+		
+		final DBObject ref = lookup(key);
+		if (ref == null) {
+			return filterMissing ? null : item;
+		}
+		
+		if (targetField != null) {
+			item.put(targetField, ref);
+		} else {
+			for (String field: ref.keySet()) {
+				if ( !"_id".equals(field) ) {
+					item.put(field, ref.get(field));
+				}
+			}
+		}
+		
+		return item;
+	}
+	
+	// item read listener interface .........................................
+	
+	@Override
+	public void beforeRead() {
+		// Nothing to do.
+	}
+
+	@Override
+	public void afterRead(DBObject item) {
+		final Object key = item.get(keyField);
+		if (key != null) {
+			synchronized (pendingKeys) {
+				pendingKeys.add(key);
+			}
+		}
+	}
+
+	@Override
+	public void onReadError(Exception ex) {
+		// Nothing to do.
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * @return The reference document of the key or <code>null</code>.
+	 */
+	private DBObject lookup(Object key) {
+		DBObject ref = getCached(key);
+		if (ref != null) {
+			return ref == MISSING ? null : ref;
+		}
+		
+		final BasicDBList missing = new BasicDBList();
+		missing.add(key);
+		synchronized (pendingKeys) {
+			for (Object pending: pendingKeys) {
+				if ( !pending.equals(key) && getCached(pending) == null ) {
+					missing.add(pending);
+				}
+			}
+			pendingKeys.clear();
+		}
+		
+		final Map<Object, DBObject> found = new HashMap<Object, DBObject>();
+		final DBCursor cursor = mongo.getDB(db).getCollection(collection)
+			.find(new BasicDBObject(lookupField, new BasicDBObject("$in", missing)), projection);
+		try {
+			while ( cursor.hasNext() ) {
+				final DBObject doc = cursor.next();
+				found.put(doc.get(lookupField), doc);
+			}
+		} finally {
+			cursor.close();
+		}
+		
+		final long now = System.currentTimeMillis();
+		synchronized (cache) {
+			for (Object k: missing) {
+				final DBObject doc = found.get(k);
+				cache.put(k, new CacheEntry(doc != null ? doc : MISSING, now));
+			}
+		}
+		
+		return found.get(key);
+	}
+	
+	/**
+	 * @return The cached reference document, {@link #MISSING} or <code>null</code> if the key is not cached.
+	 */
+	private DBObject getCached(Object key) {
+		synchronized (cache) {
+			final CacheEntry entry = cache.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if ( cacheTtl > 0 && System.currentTimeMillis() - entry.loadedAt > cacheTtl ) {
+				cache.remove(key);
+				return null;
+			}
+			return entry.doc;
+		}
+	}
+	
+	private static class CacheEntry {
+		
+		private final DBObject doc;
+		
+		private final long loadedAt;
+		
+		private CacheEntry(DBObject doc, long loadedAt) {
+			this.doc = doc;
+			this.loadedAt = loadedAt;
+		}
+		
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setKeyField(String keyField) {
+		this.keyField = keyField;
+	}
+
+	public void setLookupField(String lookupField) {
+		this.lookupField = lookupField;
+	}
+
+	public void setKeys(String keys) {
+		this.keys = keys;
+	}
+
+	public void setTargetField(String targetField) {
+		this.targetField = targetField;
+	}
+
+	public void setFilterMissing(boolean filterMissing) {
+		this.filterMissing = filterMissing;
+	}
+
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public void setCacheTtl(long cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.hasText( keyField, "A key field is required" );
+		Assert.hasText( lookupField, "A lookup field is required" );
+		Assert.isTrue( cacheSize > 0, "The cache size must be positive" );
+		
+		projection = null;
+		if ( StringUtils.hasText(keys) ) {
+			try {
+				projection = (DBObject)JSON.parse(keys);
+			} catch (JSONParseException e) {
+				throw new IllegalArgumentException("Not a valid JSON document: " + keys, e);
+			}
+			// the lookup field is needed to assign the reference documents to their keys
+			if ( !projection.containsField(lookupField) && isInclusion(projection) ) {
+				projection.put(lookupField, 1);
+			}
+		}
+		
+		cache = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+	
+	private static boolean isInclusion(DBObject projection) {
+		for (String field: projection.keySet()) {
+			final Object value = projection.get(field);
+			if ( !"_id".equals(field) ) {
+				return Boolean.TRUE.equals(value) || (value instanceof Number && ((Number)value).intValue() != 0);
+			}
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,184 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+
+/**
+ * A {@link PartitionHandler} that distributes the partitions of a step to {@link MongoDBPartitionWorker}s 
+ * on other JVMs through a queue collection.
+ * <p/>
+ * For each partition, a document with the id of its step execution is put into the queue. Workers claim 
+ * these documents with <code>findAndModify</code>, run the step and mark the document as done. The handler
+ * polls the number of finished partitions and then reads the results with a {@link JobExplorer}, so master 
+ * and workers have to share the job repository.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #stepName}: Name of the step that the workers run.</li>
+ * <li>{@link #jobExplorer}: Explorer of the shared job repository.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #collection}: Name of the queue collection, defaults to <code>batch_partitions</code>.</li>
+ * <li>{@link #gridSize}: Number of partitions to create, defaults to 1.</li>
+ * <li>{@link #pollInterval}: Milliseconds between two checks for finished partitions, defaults to 1000.</li>
+ * <li>{@link #timeout}: Milliseconds to wait for all partitions, defaults to -1 (wait forever).</li>
+ * </ul>
+ */
+public class MongoDBPartitionHandler implements PartitionHandler, InitializingBean {
+
+	/** Default name of the queue collection. */
+	static final String DEFAULT_COLLECTION = "batch_partitions";
+	
+	static final String ID = "_id";
+	
+	static final String JOB_EXECUTION_ID = "jobExecutionId";
+	
+	static final String STEP_NAME = "stepName";
+	
+	static final String STATE = "state";
+	
+	static final String OWNER = "owner";
+	
+	static final String HEARTBEAT = "heartbeat";
+	
+	static final String STATUS = "status";
+	
+	static final String WAITING = "WAITING";
+	
+	static final String CLAIMED = "CLAIMED";
+	
+	static final String DONE = "DONE";
+	
+	private static final long DEFAULT_POLL_INTERVAL = 1000;
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the queue collection. */
+	protected String collection = DEFAULT_COLLECTION;
+	
+	/** Name of the step that the workers run. */
+	protected String stepName;
+	
+	/** Explorer of the shared job repository. */
+	protected JobExplorer jobExplorer;
+	
+	/** Number of partitions. */
+	protected int gridSize = 1;
+	
+	/** Milliseconds between two checks for finished partitions. */
+	protected long pollInterval = DEFAULT_POLL_INTERVAL;
+	
+	/** Milliseconds to wait for all partitions, negative to wait forever. */
+	protected long timeout = -1;
+	
+	@Override
+	public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution masterStepExecution) 
+		throws Exception {
+		
+		final Set<StepExecution> partitions = stepSplitter.split(masterStepExecution, gridSize);
+		final DBCollection coll = mongo.getDB(db).getCollection(collection);
+		
+		final List<Long> ids = new ArrayList<Long>(partitions.size());
+		for (StepExecution partition: partitions) {
+			ids.add(partition.getId());
+			coll.save( new BasicDBObject(ID, partition.getId())
+				.append(JOB_EXECUTION_ID, partition.getJobExecutionId())
+				.append(STEP_NAME, stepName)
+				.append(STATE, WAITING) );
+		}
+		
+		final DBObject done = new BasicDBObject(ID, new BasicDBObject("$in", ids)).append(STATE, DONE);
+		final long deadline = System.currentTimeMillis() + timeout;
+		
+		while ( coll.count(done) < ids.size() ) {
+			if ( timeout >= 0 && System.currentTimeMillis() > deadline ) {
+				throw new TimeoutException("Timeout waiting for partitions of step " + stepName 
+					+ " to finish, steps executions: " + ids);
+			}
+			Thread.sleep(pollInterval);
+		}
+		
+		coll.remove( new BasicDBObject(ID, new BasicDBObject("$in", ids)) );
+		
+		final List<StepExecution> result = new ArrayList<StepExecution>(partitions.size());
+		for (StepExecution partition: partitions) {
+			result.add( jobExplorer.getStepExecution(partition.getJobExecutionId(), partition.getId()) );
+		}
+		
+		return result;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setStepName(String stepName) {
+		this.stepName = stepName;
+	}
+
+	public void setJobExplorer(JobExplorer jobExplorer) {
+		this.jobExplorer = jobExplorer;
+	}
+
+	public void setGridSize(int gridSize) {
+		this.gridSize = gridSize;
+	}
+
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.hasText( stepName, "A step name is required" );
+		Assert.notNull( jobExplorer, "A JobExplorer is required" );
+		Assert.isTrue( gridSize > 0, "Grid size must be positive" );
+		Assert.isTrue( pollInterval > 0, "Poll interval must be positive" );
+		
+		mongo.getDB(db).getCollection(collection).ensureIndex( 
+			new BasicDBObject(STEP_NAME, 1).append(STATE, 1).append(HEARTBEAT, 1) );
+	}
+	
+}
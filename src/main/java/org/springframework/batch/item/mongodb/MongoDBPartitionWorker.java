@@ -0,0 +1,282 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.CLAIMED;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.DONE;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.HEARTBEAT;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.ID;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.JOB_EXECUTION_ID;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.OWNER;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.STATE;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.STATUS;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.STEP_NAME;
+import static org.springframework.batch.item.mongodb.MongoDBPartitionHandler.WAITING;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+
+/**
+ * Runs the partitions that a {@link MongoDBPartitionHandler} puts into the queue collection.
+ * <p/>
+ * A worker claims a waiting partition with <code>findAndModify</code> and updates the heartbeat of the claim
+ * while it runs the step. A claim whose heartbeat is older than {@link #staleTimeout} belongs to a dead worker 
+ * and is claimed again. The step execution is then loaded with the execution context of its last commit, 
+ * so the step restarts where the dead worker stopped.
+ * <p/>
+ * A worker is a {@link Runnable} that claims partitions until it is stopped, it is usually started on a 
+ * {@link org.springframework.core.task.TaskExecutor}. Several workers may share a JVM.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #step}: The step that runs the partitions. Its name must match the step name of the handler.</li>
+ * <li>{@link #jobExplorer}: Explorer of the shared job repository.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #collection}: Name of the queue collection, defaults to <code>batch_partitions</code>.</li>
+ * <li>{@link #workerId}: Identifies this worker in claims, defaults to the name of the JVM and a counter.</li>
+ * <li>{@link #heartbeatInterval}: Milliseconds between two heartbeats, defaults to 10000.</li>
+ * <li>{@link #staleTimeout}: Milliseconds after which a claim without heartbeat is stale, defaults to 60000.</li>
+ * <li>{@link #pollInterval}: Milliseconds to wait when the queue is empty, defaults to 1000.</li>
+ * </ul>
+ */
+public class MongoDBPartitionWorker implements Runnable, InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(MongoDBPartitionWorker.class);
+	
+	private static final long DEFAULT_HEARTBEAT_INTERVAL = 10000;
+	
+	private static final long DEFAULT_STALE_TIMEOUT = 60000;
+	
+	private static final long DEFAULT_POLL_INTERVAL = 1000;
+	
+	private static int instances;
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the queue collection. */
+	protected String collection = MongoDBPartitionHandler.DEFAULT_COLLECTION;
+	
+	/** The step that runs the partitions. */
+	protected Step step;
+	
+	/** Explorer of the shared job repository. */
+	protected JobExplorer jobExplorer;
+	
+	/** Identifies this worker in claims. */
+	protected String workerId;
+	
+	/** Milliseconds between two heartbeats. */
+	protected long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+	
+	/** Milliseconds after which a claim without heartbeat is stale. */
+	protected long staleTimeout = DEFAULT_STALE_TIMEOUT;
+	
+	/** Milliseconds to wait when the queue is empty. */
+	protected long pollInterval = DEFAULT_POLL_INTERVAL;
+	
+	// internally used attributes ......................................
+	
+	private Timer heartbeats;
+	
+	private volatile boolean running = true;
+	
+	/**
+	 * Claims and runs partitions until {@link #stop()} is called.
+	 */
+	@Override
+	public void run() {
+		while (running) {
+			if ( !processNext() ) {
+				try {
+					Thread.sleep(pollInterval);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Lets {@link #run()} return after the current partition.
+	 */
+	public void stop() {
+		running = false;
+	}
+	
+	/**
+	 * Claims and runs a single partition.
+	 * 
+	 * @return <code>false</code> if there is no partition to claim or the claimed partition was released again 
+	 * because its step execution could not be loaded.
+	 */
+	public boolean processNext() {
+		final DBCollection coll = mongo.getDB(db).getCollection(collection);
+		final DBObject claim = claim(coll);
+		if (claim == null) {
+			return false;
+		}
+		
+		final Object id = claim.get(ID);
+		final TimerTask heartbeat = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					coll.update( new BasicDBObject(ID, id).append(OWNER, workerId), 
+						new BasicDBObject("$set", new BasicDBObject(HEARTBEAT, new Date())) );
+				} catch (RuntimeException e) {
+					// an exception would cancel the timer of all partitions, the next heartbeat tries again
+					logger.warn("Heartbeat of partition " + id + " failed", e);
+				}
+			}
+		};
+		heartbeats.schedule(heartbeat, heartbeatInterval, heartbeatInterval);
+		
+		final StepExecution stepExecution;
+		try {
+			stepExecution = jobExplorer.getStepExecution( 
+				((Number)claim.get(JOB_EXECUTION_ID)).longValue(), ((Number)id).longValue() );
+		} catch (RuntimeException e) {
+			// the step has not started, so the partition is released for another worker
+			logger.error("Step execution of partition " + id + " could not be loaded", e);
+			heartbeat.cancel();
+			coll.update( new BasicDBObject(ID, id).append(OWNER, workerId), 
+				new BasicDBObject("$set", new BasicDBObject(STATE, WAITING)).append("$unset", new BasicDBObject(OWNER, 1)) );
+			return false;
+		}
+		
+		BatchStatus status = BatchStatus.FAILED;
+		try {
+			if (stepExecution == null) {
+				status = BatchStatus.UNKNOWN;
+			} else if ( stepExecution.getStatus() == BatchStatus.COMPLETED ) {
+				// a dead worker finished the step but not the claim
+				status = BatchStatus.COMPLETED;
+			} else {
+				step.execute(stepExecution);
+				status = stepExecution.getStatus();
+			}
+		} catch (Exception e) {
+			// the step failed before it could record the failure, the master sees the last stored status
+			logger.error("Partition " + id + " failed", e);
+		} finally {
+			heartbeat.cancel();
+			coll.update( new BasicDBObject(ID, id).append(OWNER, workerId), 
+				new BasicDBObject("$set", new BasicDBObject(STATE, DONE).append(STATUS, status.name())) );
+		}
+		
+		return true;
+	}
+	
+	// private methods .....................................................
+	
+	private DBObject claim(DBCollection coll) {
+		final Date now = new Date();
+		
+		final BasicDBList states = new BasicDBList();
+		states.add( new BasicDBObject(STATE, WAITING) );
+		states.add( new BasicDBObject(STATE, CLAIMED)
+			.append(HEARTBEAT, new BasicDBObject("$lt", new Date(now.getTime() - staleTimeout))) );
+		
+		return coll.findAndModify(
+			new BasicDBObject(STEP_NAME, step.getName()).append("$or", states), 
+			null, new BasicDBObject(ID, 1), false, 
+			new BasicDBObject("$set", new BasicDBObject(STATE, CLAIMED).append(OWNER, workerId).append(HEARTBEAT, now)), 
+			true, false);
+	}
+	
+	private static synchronized int nextInstance() {
+		return ++instances;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setStep(Step step) {
+		this.step = step;
+	}
+
+	public void setJobExplorer(JobExplorer jobExplorer) {
+		this.jobExplorer = jobExplorer;
+	}
+
+	public void setWorkerId(String workerId) {
+		this.workerId = workerId;
+	}
+
+	public void setHeartbeatInterval(long heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	public void setStaleTimeout(long staleTimeout) {
+		this.staleTimeout = staleTimeout;
+	}
+
+	public void setPollInterval(long pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.notNull( step, "A step is required" );
+		Assert.notNull( jobExplorer, "A JobExplorer is required" );
+		Assert.isTrue( heartbeatInterval > 0, "Heartbeat interval must be positive" );
+		Assert.isTrue( staleTimeout > heartbeatInterval, "Stale timeout must be greater than the heartbeat interval" );
+		Assert.isTrue( pollInterval > 0, "Poll interval must be positive" );
+		
+		if (workerId == null) {
+			workerId = ManagementFactory.getRuntimeMXBean().getName() + "-" + nextInstance();
+		}
+		heartbeats = new Timer("heartbeat-" + workerId, true);
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+		if (heartbeats != null) {
+			heartbeats.cancel();
+		}
+	}
+	
+}
@@ -0,0 +1,388 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.Mongo;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * An in-memory copy of a small reference collection, shared by all steps and partitions of a job.
+ * <p/>
+ * Register the cache as listener of the job: the collection is then loaded once before the job starts. Register 
+ * it as listener of the steps, too, to store the hit and miss counters since the start of the job in the step's 
+ * execution context under the keys <code>referenceData.hits</code> and <code>referenceData.misses</code> when 
+ * the step has ended. Documents are looked up by the value of their field {@link #keyField}. Numeric keys are 
+ * held in a map with primitive <code>long</code> keys, so they need no key objects.
+ * <p/>
+ * Each running job has its own copy and counters, so concurrent jobs may share the cache. Lookups use the job of 
+ * the step running on the current thread (see {@link StepSynchronizationManager}).
+ * <p/>
+ * The copy is replaced by a new one when it is older than {@link #ttl} milliseconds or, if a {@link #versionField} 
+ * is set, when the greatest value of that field has changed. The version is checked at most every 
+ * {@link #versionCheckInterval} milliseconds. A single thread reloads the collection, the other threads keep 
+ * looking up the old copy in the meantime.
+ * <p/>
+ * Required parameters are:
+ * <ul>
+ * <li>{@link #mongo}: a reference to a {@link Mongo} connection pool.</li>
+ * <li>{@link #db}: Name of the database to use.</li>
+ * <li>{@link #collection}: Name of the reference collection.</li>
+ * </ul>
+ * <p/>
+ * Optional parameters are:
+ * <ul>
+ * <li>{@link #keyField}: Name of the key field. Defaults to <code>_id</code>.</li>
+ * <li>{@link #query}: a query string in JSON notation to restrict the loaded documents.</li>
+ * <li>{@link #keys}: the fields to load in JSON notation.</li>
+ * <li>{@link #ttl}: Milliseconds after which the copy is reloaded. Defaults to 0 (never).</li>
+ * <li>{@link #versionField}: Name of a field that is incremented on each change, e.g. a change counter.</li>
+ * <li>{@link #versionCheckInterval}: Milliseconds between version checks. Defaults to 60000.</li>
+ * </ul>
+ */
+public class MongoDBReferenceDataCache implements JobExecutionListener, StepExecutionListener, InitializingBean {
+
+	private static final String DEFAULT_KEY_FIELD = "_id";
+	
+	/** By default, the version is checked every minute. */
+	private static final long DEFAULT_VERSION_CHECK_INTERVAL = 60 * 1000;
+	
+	/** Prefix of the counters in the execution context. */
+	private static final String PREFIX = "referenceData.";
+	
+	// configurable attributes ......................................
+	
+	/** MongoDB connection pool. */
+	protected Mongo mongo;
+	
+	/** Name of the database. */
+	protected String db;
+	
+	/** Name of the reference collection. */
+	protected String collection;
+	
+	/** Name of the key field. */
+	protected String keyField = DEFAULT_KEY_FIELD;
+	
+	/** Query in JSON notation to restrict the loaded documents (optional). */
+	protected String query;
+	
+	/** JSON document that filters the loaded fields (optional). */
+	protected String keys;
+	
+	/** Milliseconds after which the copy is reloaded. */
+	protected long ttl;
+	
+	/** Name of a field that is incremented on each change (optional). */
+	protected String versionField;
+	
+	/** Milliseconds between version checks. */
+	protected long versionCheckInterval = DEFAULT_VERSION_CHECK_INTERVAL;
+	
+	// internally used attributes ......................................
+	
+	/** The copies and counters of the running jobs by the id of their job execution. */
+	private final ConcurrentMap<Long, JobCache> jobCaches = new ConcurrentHashMap<Long, JobCache>();
+	
+	// job execution listener interface .........................................
+	
+	@Override
+	public void beforeJob(JobExecution jobExecution) {
+		jobCaches.put( jobExecution.getId(), new JobCache(load()) );
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		jobCaches.remove( jobExecution.getId() );
+	}
+	
+	// step execution listener interface .........................................
+	
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		// Nothing to do.
+	}
+	
+	/**
+	 * Stores the counters in the step's execution context, which the step persists after its listeners.
+	 */
+	@Override
+	public ExitStatus afterStep(StepExecution stepExecution) {
+		final JobCache jobCache = jobCaches.get( stepExecution.getJobExecutionId() );
+		if (jobCache != null) {
+			stepExecution.getExecutionContext().putLong(PREFIX + "hits", jobCache.hits.get());
+			stepExecution.getExecutionContext().putLong(PREFIX + "misses", jobCache.misses.get());
+		}
+		return null;
+	}
+	
+	// public interface .........................................
+	
+	/**
+	 * @return The document with the given key or <code>null</code>. 
+	 */
+	public DBObject get(Object key) {
+		final JobCache jobCache = getJobCache();
+		final Snapshot current = getSnapshot(jobCache);
+		final DBObject doc = isIntegral(key) 
+			? current.numeric.get( ((Number)key).longValue() ) 
+			: current.other.get(key);
+		
+		(doc != null ? jobCache.hits : jobCache.misses).incrementAndGet();
+		return doc;
+	}
+	
+	/**
+	 * @return The document with the given numeric key or <code>null</code>. 
+	 */
+	public DBObject get(long key) {
+		final JobCache jobCache = getJobCache();
+		final DBObject doc = getSnapshot(jobCache).numeric.get(key);
+		
+		(doc != null ? jobCache.hits : jobCache.misses).incrementAndGet();
+		return doc;
+	}
+	
+	/**
+	 * @return Number of lookups of the current job that found a document.
+	 */
+	public long getHitCount() {
+		return getJobCache().hits.get();
+	}
+	
+	/**
+	 * @return Number of lookups of the current job that did not find a document.
+	 */
+	public long getMissCount() {
+		return getJobCache().misses.get();
+	}
+	
+	/**
+	 * @return Number of documents cached for the current job.
+	 */
+	public int size() {
+		final Snapshot current = getSnapshot( getJobCache() );
+		return current.numeric.size() + current.other.size();
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * @return The cache of the job of the step running on the current thread.
+	 */
+	private JobCache getJobCache() {
+		final StepContext context = StepSynchronizationManager.getContext();
+		final JobCache jobCache = context != null 
+			? jobCaches.get( context.getStepExecution().getJobExecutionId() ) 
+			: null;
+		
+		if (jobCache == null) {
+			throw new IllegalStateException("The cache is not registered as listener of the job of the current step");
+		}
+		return jobCache;
+	}
+	
+	/**
+	 * @return The current copy of the job, which is reloaded if it is outdated. While another thread reloads an 
+	 * outdated copy, the outdated copy is returned.
+	 */
+	private Snapshot getSnapshot(JobCache jobCache) {
+		Snapshot current = jobCache.snapshot;
+		if ( !isOutdated(current) || !jobCache.loadLock.tryLock() ) {
+			return current;
+		}
+		try {
+			current = jobCache.snapshot;
+			if ( isOutdated(current) ) {
+				current = load();
+				jobCache.snapshot = current;
+			}
+		} finally {
+			jobCache.loadLock.unlock();
+		}
+		return current;
+	}
+	
+	/**
+	 * Checks the TTL and the version. Only one thread checks the version, the others use the current copy.
+	 */
+	private boolean isOutdated(Snapshot current) {
+		final long now = System.currentTimeMillis();
+		if ( current.stale || (ttl > 0 && now - current.loadedAt > ttl) ) {
+			return true;
+		}
+		
+		if (versionField == null) {
+			return false;
+		}
+		
+		final long checkedAt = current.checkedAt.get();
+		if ( now - checkedAt < versionCheckInterval || !current.checkedAt.compareAndSet(checkedAt, now) ) {
+			return false;
+		}
+		
+		final Object version = getVersion( mongo.getDB(db).getCollection(collection) );
+		current.stale = version == null ? current.version != null : !version.equals(current.version);
+		return current.stale;
+	}
+	
+	private Snapshot load() {
+		final DBCollection coll = mongo.getDB(db).getCollection(collection);
+		final Object version = versionField != null ? getVersion(coll) : null;
+		
+		final LongObjectMap<DBObject> numeric = new LongObjectMap<DBObject>( (int)coll.count() );
+		final Map<Object, DBObject> other = new HashMap<Object, DBObject>();
+		
+		final DBCursor cursor = coll.find( parse(query), parse(keys) );
+		try {
+			while ( cursor.hasNext() ) {
+				final DBObject doc = cursor.next();
+				final Object key = doc.get(keyField);
+				
+				if ( isIntegral(key) ) {
+					numeric.put(((Number)key).longValue(), doc);
+				} else if (key != null) {
+					other.put(key, doc);
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		
+		return new Snapshot(numeric, other, version);
+	}
+	
+	private Object getVersion(DBCollection coll) {
+		final DBCursor cursor = coll.find( parse(query), new BasicDBObject(versionField, 1) )
+			.sort( new BasicDBObject(versionField, -1) ).limit(1);
+		try {
+			return cursor.hasNext() ? cursor.next().get(versionField) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	private static boolean isIntegral(Object key) {
+		return key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte;
+	}
+	
+	private static DBObject parse(String json) {
+		if ( !StringUtils.hasText(json) ) {
+			return null;
+		}
+		try {
+			return (DBObject)JSON.parse(json);
+		} catch (JSONParseException e) {
+			throw new IllegalArgumentException("Not a valid JSON document: " + json, e);
+		}
+	}
+	
+	/** The copy and the counters of a job. */
+	private static class JobCache {
+		
+		private volatile Snapshot snapshot;
+		
+		private final ReentrantLock loadLock = new ReentrantLock();
+		
+		private final AtomicLong hits = new AtomicLong();
+		
+		private final AtomicLong misses = new AtomicLong();
+		
+		private JobCache(Snapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+		
+	}
+	
+	/** An immutable copy of the collection. */
+	private static class Snapshot {
+		
+		private final LongObjectMap<DBObject> numeric;
+		
+		private final Map<Object, DBObject> other;
+		
+		private final Object version;
+		
+		private final long loadedAt = System.currentTimeMillis();
+		
+		private final AtomicLong checkedAt = new AtomicLong(loadedAt);
+		
+		/** Set when a version check has found a change. */
+		private volatile boolean stale;
+		
+		private Snapshot(LongObjectMap<DBObject> numeric, Map<Object, DBObject> other, Object version) {
+			this.numeric = numeric;
+			this.other = other;
+			this.version = version;
+		}
+		
+	}
+	
+	// Setter ...............................................................
+	
+	public void setMongo(Mongo mongo) {
+		this.mongo = mongo;
+	}
+
+	public void setDb(String db) {
+		this.db = db;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public void setKeyField(String keyField) {
+		this.keyField = keyField;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public void setKeys(String keys) {
+		this.keys = keys;
+	}
+
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	public void setVersionField(String versionField) {
+		this.versionField = versionField;
+	}
+
+	public void setVersionCheckInterval(long versionCheckInterval) {
+		this.versionCheckInterval = versionCheckInterval;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(mongo, "A Mongo instance is required");
+		Assert.hasText( db, "A database name is required" );
+		Assert.hasText( collection, "A collection name is required" );
+		Assert.hasText( keyField, "A key field is required" );
+		Assert.isTrue( ttl >= 0 && versionCheckInterval >= 0, "The refresh intervals must not be negative" );
+	}
+	
+}
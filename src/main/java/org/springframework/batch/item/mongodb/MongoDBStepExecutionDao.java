@@ -0,0 +1,162 @@
+package org.springframework.batch.item.mongodb;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.dao.StepExecutionDao;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * {@link StepExecutionDao} that stores step executions in the collection <code>&lt;prefix&gt;step_execution</code>.
+ * <p/>
+ * Like {@link MongoDBJobExecutionDao}, updates check and increment the version in a single 
+ * <code>findAndModify</code>, which matters here because a step execution is updated after every chunk.
+ */
+public class MongoDBStepExecutionDao extends AbstractMongoDBDao implements StepExecutionDao {
+
+	static final String JOB_EXECUTION_ID = "jobExecutionId";
+	
+	private static final String STEP_NAME = "stepName";
+	
+	private static final String START_TIME = "startTime";
+	
+	private static final String END_TIME = "endTime";
+	
+	private static final String STATUS = "status";
+	
+	private static final String COMMIT_COUNT = "commitCount";
+	
+	private static final String READ_COUNT = "readCount";
+	
+	private static final String FILTER_COUNT = "filterCount";
+	
+	private static final String WRITE_COUNT = "writeCount";
+	
+	private static final String READ_SKIP_COUNT = "readSkipCount";
+	
+	private static final String WRITE_SKIP_COUNT = "writeSkipCount";
+	
+	private static final String PROCESS_SKIP_COUNT = "processSkipCount";
+	
+	private static final String ROLLBACK_COUNT = "rollbackCount";
+	
+	private static final String EXIT_CODE = "exitCode";
+	
+	private static final String EXIT_MESSAGE = "exitMessage";
+	
+	private static final String LAST_UPDATED = "lastUpdated";
+	
+	@Override
+	public void saveStepExecution(StepExecution stepExecution) {
+		Assert.isNull(stepExecution.getId(), "to-be-saved (not updated) StepExecution can't already have an id assigned");
+		Assert.isNull(stepExecution.getVersion(), "to-be-saved (not updated) StepExecution can't already have a version assigned");
+		Assert.notNull(stepExecution.getJobExecutionId(), "JobExecution must be saved already.");
+		
+		stepExecution.setId( nextId(STEP_EXECUTION) );
+		stepExecution.incrementVersion();
+		
+		final DBObject doc = toDBObject(stepExecution)
+			.append(ID, stepExecution.getId())
+			.append(VERSION, stepExecution.getVersion())
+			.append(JOB_EXECUTION_ID, stepExecution.getJobExecutionId())
+			.append(STEP_NAME, stepExecution.getStepName());
+		
+		getCollection(STEP_EXECUTION).insert(doc, WRITE_CONCERN);
+	}
+
+	@Override
+	public void updateStepExecution(StepExecution stepExecution) {
+		Assert.notNull(stepExecution.getId(), "StepExecution Id cannot be null. StepExecution must saved before it can be updated.");
+		
+		final DBObject updated = getCollection(STEP_EXECUTION).findAndModify(
+			new BasicDBObject(ID, stepExecution.getId()).append(VERSION, stepExecution.getVersion()), 
+			new BasicDBObject(ID, 1), null, false, 
+			new BasicDBObject("$set", toDBObject(stepExecution)).append("$inc", new BasicDBObject(VERSION, 1)), 
+			false, false);
+		
+		if (updated == null) {
+			throw new OptimisticLockingFailureException("Attempt to update step execution id=" + stepExecution.getId()
+				+ " with wrong version (" + stepExecution.getVersion() + ")");
+		}
+		
+		stepExecution.incrementVersion();
+	}
+
+	@Override
+	public StepExecution getStepExecution(JobExecution jobExecution, Long stepExecutionId) {
+		final DBObject doc = getCollection(STEP_EXECUTION).findOne(
+			new BasicDBObject(ID, stepExecutionId).append(JOB_EXECUTION_ID, jobExecution.getId()), 
+			new BasicDBObject(CONTEXT, 0));
+		
+		return doc == null ? null : toStepExecution(doc, jobExecution);
+	}
+
+	@Override
+	public void addStepExecutions(JobExecution jobExecution) {
+		final DBCursor cursor = getCollection(STEP_EXECUTION).find(
+			new BasicDBObject(JOB_EXECUTION_ID, jobExecution.getId()), new BasicDBObject(CONTEXT, 0))
+			.sort(new BasicDBObject(ID, 1));
+		try {
+			while ( cursor.hasNext() ) {
+				// the step execution adds itself to the job execution
+				toStepExecution(cursor.next(), jobExecution);
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	// private methods .....................................................
+	
+	/**
+	 * @return The mutable attributes of the execution.
+	 */
+	private static BasicDBObject toDBObject(StepExecution stepExecution) {
+		return new BasicDBObject(START_TIME, stepExecution.getStartTime())
+			.append(END_TIME, stepExecution.getEndTime())
+			.append(STATUS, stepExecution.getStatus().name())
+			.append(COMMIT_COUNT, stepExecution.getCommitCount())
+			.append(READ_COUNT, stepExecution.getReadCount())
+			.append(FILTER_COUNT, stepExecution.getFilterCount())
+			.append(WRITE_COUNT, stepExecution.getWriteCount())
+			.append(READ_SKIP_COUNT, stepExecution.getReadSkipCount())
+			.append(WRITE_SKIP_COUNT, stepExecution.getWriteSkipCount())
+			.append(PROCESS_SKIP_COUNT, stepExecution.getProcessSkipCount())
+			.append(ROLLBACK_COUNT, stepExecution.getRollbackCount())
+			.append(EXIT_CODE, stepExecution.getExitStatus().getExitCode())
+			.append(EXIT_MESSAGE, stepExecution.getExitStatus().getExitDescription())
+			.append(LAST_UPDATED, stepExecution.getLastUpdated());
+	}
+	
+	private static StepExecution toStepExecution(DBObject doc, JobExecution jobExecution) {
+		final StepExecution stepExecution = new StepExecution((String)doc.get(STEP_NAME), jobExecution, getLong(doc, ID));
+		stepExecution.setStartTime( getDate(doc, START_TIME) );
+		stepExecution.setEndTime( getDate(doc, END_TIME) );
+		stepExecution.setStatus( BatchStatus.valueOf((String)doc.get(STATUS)) );
+		stepExecution.setCommitCount( getInt(doc, COMMIT_COUNT) );
+		stepExecution.setReadCount( getInt(doc, READ_COUNT) );
+		stepExecution.setFilterCount( getInt(doc, FILTER_COUNT) );
+		stepExecution.setWriteCount( getInt(doc, WRITE_COUNT) );
+		stepExecution.setReadSkipCount( getInt(doc, READ_SKIP_COUNT) );
+		stepExecution.setWriteSkipCount( getInt(doc, WRITE_SKIP_COUNT) );
+		stepExecution.setProcessSkipCount( getInt(doc, PROCESS_SKIP_COUNT) );
+		stepExecution.setRollbackCount( getInt(doc, ROLLBACK_COUNT) );
+		stepExecution.setExitStatus( new ExitStatus((String)doc.get(EXIT_CODE), (String)doc.get(EXIT_MESSAGE)) );
+		stepExecution.setLastUpdated( getDate(doc, LAST_UPDATED) );
+		stepExecution.setVersion( getInt(doc, VERSION) );
+		return stepExecution;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		getCollection(STEP_EXECUTION).ensureIndex( new BasicDBObject(JOB_EXECUTION_ID, 1) );
+	}
+	
+}
@@ -0,0 +1,169 @@
+package org.springframework.batch.item.mongodb;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+
+/**
+ * This item writer combines the updates of a chunk per key and upserts one document per distinct key.
+ * <p/>
+ * Each item is an update document with the key in the field {@link #keyField} and the update operators
+ * to apply, e.g. <code>{ _id: "/index.html", $inc: { views: 1 } }</code>. The updates of a chunk that have the 
+ * same key are combined into one update:
+ * <ul>
+ * <li><code>$inc</code>: increments of the same field are summed up.</li>
+ * <li><code>$set</code>: values are merged, the last value of a field wins.</li>
+ * <li><code>$setOnInsert</code>: values are merged, the first value of a field wins.</li>
+ * <li><code>$push</code>, <code>$addToSet</code>: values are appended to an <code>$each</code> list. Modifiers
+ * 		like <code>$slice</code> or <code>$sort</code> cannot be combined and are rejected.</li>
+ * </ul>
+ * The combined update is then upserted with the query <code>{ keyField: key }</code>. With hot keys this reduces 
+ * the number of writes by orders of magnitude, and even more if chunks are coalesced.
+ * <p/>
+ * Required parameters are the ones of {@link MongoDBItemWriter}. 
+ * <p/>
+ * Optional parameters are the ones of {@link MongoDBItemWriter} and:
+ * <ul>
+ * <li>{@link #keyField}: Name of the key field. Defaults to <code>_id</code>.</li>
+ * </ul>
+ * Updates are not idempotent, so they are not retried, and they are not compatible with options that assign 
+ * an <code>_id</code> to the written documents (journal, checkpoints, pre-encoding, spilling).
+ */
+public class MongoDBUpsertItemWriter extends MongoDBItemWriter {
+
+	private static final String DEFAULT_KEY_FIELD = "_id";
+	
+	private static final String EACH = "$each";
+	
+	// configurable attributes ......................................
+	
+	/** Name of the key field. */
+	protected String keyField = DEFAULT_KEY_FIELD;
+	
+	/**
+	 * Combines the updates per key and upserts them.
+	 */
+	@Override
+	protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
+		final DBCollection coll = mongo.getDB(databaseName).getCollection(collectionName);
+		
+		for (Map.Entry<Object, DBObject> update: combine(docs).entrySet()) {
+			final WriteResult wr = coll.update(new BasicDBObject(keyField, update.getKey()), update.getValue(), 
+				true, false, wc);
+			
+			if ( checkWriteResult && wr != null && wr.getError() != null ) {
+				throw new MongoDBInsertFailedException(databaseName, collectionName, wr.getError() );
+			}
+		}
+	}
+	
+	/**
+	 * @return The combined update per key, in the order the keys first appear.
+	 */
+	private Map<Object, DBObject> combine(List<DBObject> docs) {
+		final Map<Object, DBObject> updates = new LinkedHashMap<Object, DBObject>();
+		
+		for (DBObject doc: docs) {
+			final Object key = doc.get(keyField);
+			if (key == null) {
+				throw new IllegalArgumentException("Update without key field " + keyField + ": " + doc);
+			}
+			
+			DBObject update = updates.get(key);
+			if (update == null) {
+				update = new BasicDBObject();
+				updates.put(key, update);
+			}
+			
+			for (String operator: doc.keySet()) {
+				if ( operator.equals(keyField) ) {
+					continue;
+				}
+				if ( !operator.startsWith("$") || !(doc.get(operator) instanceof DBObject) ) {
+					throw new IllegalArgumentException("Not an update operator: " + operator);
+				}
+				combine(update, operator, (DBObject)doc.get(operator));
+			}
+		}
+		
+		return updates;
+	}
+	
+	private static void combine(DBObject update, String operator, DBObject fields) {
+		DBObject combined = (DBObject)update.get(operator);
+		if (combined == null) {
+			combined = new BasicDBObject();
+			update.put(operator, combined);
+		}
+		
+		for (String field: fields.keySet()) {
+			final Object value = fields.get(field);
+			final Object previous = combined.get(field);
+			
+			if ( "$inc".equals(operator) ) {
+				combined.put(field, previous == null ? value : add((Number)previous, (Number)value));
+			} else if ( "$set".equals(operator) ) {
+				combined.put(field, value);
+			} else if ( "$setOnInsert".equals(operator) ) {
+				if ( !combined.containsField(field) ) {
+					combined.put(field, value);
+				}
+			} else if ( "$push".equals(operator) || "$addToSet".equals(operator) ) {
+				BasicDBList each = previous == null ? null : (BasicDBList)((DBObject)previous).get(EACH);
+				if (each == null) {
+					each = new BasicDBList();
+					combined.put(field, new BasicDBObject(EACH, each));
+				}
+				if ( value instanceof DBObject && ((DBObject)value).containsField(EACH) ) {
+					if ( ((DBObject)value).keySet().size() > 1 ) {
+						throw new IllegalArgumentException("Cannot combine modifiers of " + operator + ": " + value);
+					}
+					each.addAll( (List<?>)((DBObject)value).get(EACH) );
+				} else {
+					each.add(value);
+				}
+			} else {
+				throw new IllegalArgumentException("Cannot combine update operator: " + operator);
+			}
+		}
+	}
+	
+	private static Number add(Number a, Number b) {
+		if ( a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float ) {
+			return a.doubleValue() + b.doubleValue();
+		}
+		
+		final long sum = a.longValue() + b.longValue();
+		if ( a instanceof Integer && b instanceof Integer && sum == (int)sum ) {
+			return (int)sum;
+		}
+		return sum;
+	}
+	
+	// Setter ...............................................................
+	
+	public void setKeyField(String keyField) {
+		this.keyField = keyField;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		Assert.hasText( keyField, "A key field is required" );
+		Assert.isTrue( !assignIds, "Updates do not get an _id assigned" );
+		Assert.isNull( journalDirectory, "A journal is not supported" );
+		Assert.isTrue( checkpointInterval == 0 && checkpointDelay == 0, "Checkpoints are not supported" );
+		Assert.isTrue( !preEncode, "Pre-encoded updates would get an _id assigned" );
+		Assert.isTrue( spillThreshold == 0, "Spilled updates would get an _id assigned" );
+	}
+	
+}
@@ -0,0 +1,49 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BloomFilter}.
+ */
+public class BloomFilterTest {
+
+	@Test
+	public void should_contain_added_keys() {
+		// given
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		
+		// when
+		for (int i=0; i<1000; i++) {
+			filter.put("key" + i);
+		}
+		
+		// then
+		for (int i=0; i<1000; i++) {
+			assertThat( filter.mightContain("key" + i), is(true) );
+		}
+	}
+
+	@Test
+	public void should_keep_false_positive_rate() {
+		// given
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for (int i=0; i<1000; i++) {
+			filter.put(i);
+		}
+		
+		// when
+		int falsePositives = 0;
+		for (int i=1000; i<11000; i++) {
+			if ( filter.mightContain(i) ) {
+				falsePositives++;
+			}
+		}
+		
+		// then
+		assertThat( falsePositives < 300, is(true) );
+	}
+	
+}
@@ -0,0 +1,114 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.DefaultDBEncoder;
+
+/**
+ * Tests for {@link BsonJournal}.
+ */
+public class BsonJournalTest {
+
+	/** Unit under test. */
+	protected BsonJournal journal;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("journal-", "");
+		directory.delete();
+		journal = open();
+	}
+
+	@Test
+	public void should_replay_pending_records() throws Exception {
+		// given
+		journal.append( AbstractMongoDBTest.createDocuments(3) );
+		long seq = journal.append( AbstractMongoDBTest.createDocuments(2) );
+		journal.complete(1);
+		journal.close();
+
+		// when
+		journal = open();
+
+		// then
+		assertThat( journal.getPendingSequences(), is(Arrays.asList(seq)) );
+		assertThat( journal.read(seq).size(), is(2) );
+		assertThat( journal.read(seq).get(1).get("i"), is((Object)1) );
+		assertThat( journal.getSequence(), is(2L) );
+	}
+
+	@Test
+	public void should_delete_completed_segments() throws Exception {
+		// given
+		for (int i=0; i<10; i++) {
+			journal.complete( journal.append( AbstractMongoDBTest.createDocuments(10) ) );
+		}
+
+		// when
+		journal.close();
+
+		// then
+		assertThat( directory.list().length, is(0) );
+	}
+
+	@Test
+	public void should_roll_over_to_new_segment() throws Exception {
+		// given
+		for (int i=0; i<10; i++) {
+			journal.append( AbstractMongoDBTest.createDocuments(20) );
+		}
+		journal.close();
+
+		// when
+		journal = open();
+
+		// then
+		assertThat( journal.getPendingSequences().size(), is(10) );
+		assertThat( directory.list().length > 1, is(true) );
+	}
+
+	@Test
+	public void should_ignore_torn_record() throws Exception {
+		// given
+		journal.append( AbstractMongoDBTest.createDocuments(3) );
+		journal.close();
+		// a record header with a length but without documents right after the first record (53 bytes)
+		RandomAccessFile raf = new RandomAccessFile(directory.listFiles()[0], "rw");
+		raf.seek(53);
+		raf.write( new byte[] {100, 0, 0, 0, 2} );
+		raf.close();
+
+		// when
+		journal = open();
+
+		// then
+		assertThat( journal.getPendingSequences(), is(Collections.singletonList(1L)) );
+	}
+
+	@After
+	public void tearDown() {
+		journal.close();
+		for (File file: directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private BsonJournal open() throws IOException {
+		return new BsonJournal(directory, "test", 2048, DefaultDBEncoder.FACTORY.create());
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Tests for {@link ExtendedJsonEncoder}.
+ */
+public class ExtendedJsonEncoderTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** Unit under test. */
+	protected ExtendedJsonEncoder encoder = new ExtendedJsonEncoder(8);
+	
+	@Test
+	public void should_encode_document_readable_by_driver() {
+		// given
+		DBObject doc = new BasicDBObject("_id", new ObjectId("50c3a1e2e4b0c1d2a3b4c5d6"))
+			.append("name", "M\u00fcller \"quoted\"\n\ud83d\ude00")
+			.append("count", -1234567890123L)
+			.append("ratio", 0.25)
+			.append("active", true)
+			.append("missing", null)
+			.append("created", new Date(1356998400123L))
+			.append("tags", Arrays.asList("a", 1))
+			.append("nested", new BasicDBObject("x", 1))
+			.append("data", new byte[] {1, 2, 3, 4})
+			.append("pattern", Pattern.compile("^a", Pattern.CASE_INSENSITIVE));
+		
+		// when
+		encoder.writeDocument(doc);
+		DBObject parsed = (DBObject)JSON.parse( new String(encoder.buffer(), 0, encoder.length(), UTF8) );
+		
+		// then
+		assertThat( parsed.get("_id"), is(doc.get("_id")) );
+		assertThat( parsed.get("name"), is(doc.get("name")) );
+		assertThat( parsed.get("count"), is(doc.get("count")) );
+		assertThat( parsed.get("ratio"), is(doc.get("ratio")) );
+		assertThat( parsed.get("active"), is((Object)true) );
+		assertThat( parsed.containsField("missing"), is(true) );
+		assertThat( parsed.get("created"), is(doc.get("created")) );
+		assertThat( parsed.get("tags").toString(), is(JSON.parse("['a', 1]").toString()) );
+		assertThat( ((DBObject)parsed.get("nested")).get("x"), is((Object)1) );
+		// the driver does not parse binary data
+		assertThat( ((DBObject)parsed.get("data")).get("$binary"), is((Object)"AQIDBA==") );
+		assertThat( ((Pattern)parsed.get("pattern")).flags(), is(Pattern.CASE_INSENSITIVE) );
+	}
+	
+	@Test
+	public void should_reuse_buffer_after_reset() {
+		// given
+		encoder.writeLine( new BasicDBObject("i", 1) );
+		byte[] buffer = encoder.buffer();
+		
+		// when
+		encoder.reset();
+		encoder.writeLine( new BasicDBObject("i", 2) );
+		
+		// then
+		assertThat( encoder.buffer() == buffer, is(true) );
+		assertThat( new String(encoder.buffer(), 0, encoder.length(), UTF8), is("{\"i\":2}\n") );
+	}
+	
+}
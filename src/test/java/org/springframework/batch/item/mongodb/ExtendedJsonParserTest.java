@@ -0,0 +1,95 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Tests for {@link ExtendedJsonParser}.
+ */
+public class ExtendedJsonParserTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** Unit under test. */
+	protected ExtendedJsonParser parser = new ExtendedJsonParser();
+	
+	@Test
+	public void should_parse_like_driver() {
+		// given
+		String json = "{ \"_id\" : { \"$oid\" : \"50c3a1e2e4b0c1d2a3b4c5d6\"} , 'name' : \"M\\u00fcller \\\"q\\\"\" , "
+			+ "\"small\" : 42 , \"big\" : 12345678901 , \"ratio\" : -2.5e-3 , \"ok\" : true , \"none\" : null , "
+			+ "\"created\" : { \"$date\" : \"2013-01-01T00:00:00.123Z\"} , \"tags\" : [ \"a\" , 1 , { \"x\" : []}] , "
+			+ "\"p\" : { \"$regex\" : \"^a\" , \"$options\" : \"i\"} , \"emoji\" : \"\ud83d\ude00\"}";
+		
+		// when
+		DBObject doc = parse(json);
+		
+		// then
+		assertThat( doc.toString(), is(JSON.parse(json).toString()) );
+		assertThat( doc.get("_id"), is((Object)new ObjectId("50c3a1e2e4b0c1d2a3b4c5d6")) );
+		assertThat( doc.get("small"), is((Object)42) );
+		assertThat( doc.get("big"), is((Object)12345678901L) );
+		assertThat( doc.get("created"), is((Object)new Date(1356998400123L)) );
+		assertThat( ((Pattern)doc.get("p")).flags(), is(Pattern.CASE_INSENSITIVE) );
+		assertThat( doc.get("emoji"), is((Object)"\ud83d\ude00") );
+	}
+	
+	@Test
+	public void should_read_output_of_encoder() {
+		// given
+		DBObject doc = new BasicDBObject("data", new byte[] {1, 2, 3, 4, 5})
+			.append("list", Arrays.asList(1L << 40, "x"))
+			.append("n", new BasicDBObject("", -7));
+		ExtendedJsonEncoder encoder = new ExtendedJsonEncoder(16);
+		encoder.writeDocument(doc);
+		
+		// when
+		DBObject parsed = parser.parse(ByteBuffer.wrap(encoder.buffer()), 0, encoder.length());
+		
+		// then
+		assertThat( (byte[])parsed.get("data"), is(new byte[] {1, 2, 3, 4, 5}) );
+		assertThat( JSON.serialize(parsed.get("list")), is(JSON.serialize(doc.get("list"))) );
+		assertThat( ((DBObject)parsed.get("n")).get(""), is((Object)(-7)) );
+	}
+	
+	@Test
+	public void should_round_trip_extreme_longs() throws Exception {
+		// given
+		DBObject doc = new BasicDBObject("max", Long.MAX_VALUE).append("min", Long.MIN_VALUE);
+		ExtendedJsonEncoder encoder = new ExtendedJsonEncoder(16);
+		encoder.writeDocument(doc);
+		
+		// when
+		DBObject parsed = parser.parse(ByteBuffer.wrap(encoder.buffer()), 0, encoder.length());
+		DBObject tooLarge = parse("{\"n\": 9223372036854775808}");
+		
+		// then
+		assertThat( parsed.get("max"), is((Object)Long.MAX_VALUE) );
+		assertThat( parsed.get("min"), is((Object)Long.MIN_VALUE) );
+		assertThat( tooLarge.get("n"), is((Object)9223372036854775808.0) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void should_reject_truncated_document() {
+		parse("{\"a\": [1, 2");
+	}
+	
+	private DBObject parse(String json) {
+		byte[] bytes = json.getBytes(UTF8);
+		return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+	
+}
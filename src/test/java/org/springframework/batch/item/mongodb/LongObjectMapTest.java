@@ -0,0 +1,31 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LongObjectMap}.
+ */
+public class LongObjectMapTest {
+
+	@Test
+	public void should_map_keys_beyond_initial_capacity() {
+		// given
+		LongObjectMap<String> map = new LongObjectMap<String>(0);
+		
+		// when
+		for (long key = -500; key < 500; key++) {
+			map.put(key * 1024, "v" + key);
+		}
+		map.put(0, "zero");
+		
+		// then
+		assertThat( map.size(), is(1000) );
+		assertThat( map.get(-500 * 1024), is("v-500") );
+		assertThat( map.get(0), is("zero") );
+		assertThat( map.get(1) == null, is(true) );
+	}
+	
+}
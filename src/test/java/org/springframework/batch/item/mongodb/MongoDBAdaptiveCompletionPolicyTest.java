@@ -0,0 +1,93 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MongoDBAdaptiveCompletionPolicy}.
+ */
+public class MongoDBAdaptiveCompletionPolicyTest {
+
+	private static final long MILLIS = 1000000L;
+	
+	/** Unit under test. */
+	protected MongoDBAdaptiveCompletionPolicy policy;
+	
+	@Before
+	public void setUp() {
+		policy = new MongoDBAdaptiveCompletionPolicy();
+		policy.setMinChunkSize(10);
+		policy.setMaxChunkSize(1000);
+		policy.setInitialChunkSize(100);
+	}
+	
+	@Test
+	public void should_shrink_chunks_when_inserts_are_slow() throws Exception {
+		// given
+		policy.setTargetLatency(100);
+		policy.afterPropertiesSet();
+		
+		// when
+		policy.afterInsert("db", "coll", 100, 400 * MILLIS);
+		
+		// then
+		assertThat( policy.getChunkSize(), is(50) );
+	}
+
+	@Test
+	public void should_grow_chunks_when_inserts_are_fast() throws Exception {
+		// given
+		policy.setTargetLatency(100);
+		policy.afterPropertiesSet();
+		
+		// when
+		policy.afterInsert("db", "coll", 100, 80 * MILLIS);
+		
+		// then
+		assertThat( policy.getChunkSize(), is(125) );
+	}
+
+	@Test
+	public void should_converge_with_steady_latency() throws Exception {
+		// given: an insert takes 5 ms plus 1 ms per document
+		policy.setTargetLatency(100);
+		policy.afterPropertiesSet();
+		
+		// when
+		int[] sizes = new int[30];
+		for (int i=0; i<sizes.length; i++) {
+			int count = policy.getChunkSize();
+			policy.afterInsert("db", "coll", count, (5 + count) * MILLIS);
+			sizes[i] = policy.getChunkSize();
+		}
+		
+		// then: the size settles where an insert takes 100 ms
+		for (int i=20; i<sizes.length; i++) {
+			assertThat( sizes[i], is(95) );
+		}
+	}
+
+	@Test
+	public void should_respect_bounds() throws Exception {
+		// given
+		policy.setTargetThroughput(1000000);
+		policy.afterPropertiesSet();
+		
+		// when
+		for (int i=0; i<20; i++) {
+			policy.afterInsert("db", "coll", 100, 1000 * MILLIS);
+		}
+		
+		// then
+		assertThat( policy.getChunkSize(), is(1000) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void should_require_a_target() throws Exception {
+		policy.afterPropertiesSet();
+	}
+	
+}
@@ -0,0 +1,131 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Tests for {@link MongoDBAggregationTasklet}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBAggregationTaskletTest extends AbstractMongoDBTest {
+
+	private static final String OUTPUT_COLLECTION_NAME = COLLECTION_NAME + "_out";
+	
+	/** Unit under test. */
+	protected MongoDBAggregationTasklet tasklet;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		for (int i=0; i<10; i++) {
+			insert("{group: " + (i % 3) + ", value: " + i + "}");
+		}
+		
+		// prepare unit under test
+		tasklet = new MongoDBAggregationTasklet();
+		tasklet.setMongo(mongod);
+		tasklet.setDb(DB_NAME);
+		tasklet.setCollection(COLLECTION_NAME);
+		tasklet.setOutputCollection(OUTPUT_COLLECTION_NAME);
+		tasklet.setPollInterval(10);
+	}
+	
+	@Test
+	public void should_run_map_reduce() throws Exception {
+		// given
+		tasklet.setMap("function() { emit(this.group, this.value); }");
+		tasklet.setReduce("function(key, values) { return Array.sum(values); }");
+		tasklet.setQuery("{value: {$gte: 1}}");
+		tasklet.afterPropertiesSet();
+		StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+		
+		// when
+		StepContribution contribution = execute(stepExecution);
+		
+		// then
+		assertThat( stepExecution.getReadCount(), is(9) );
+		assertThat( contribution.getWriteCount(), is(3) );
+	}
+
+	@Test
+	public void should_run_aggregation_pipeline() throws Exception {
+		// given
+		tasklet.setPipeline("[{$match: {value: {$lt: 6}}}, {$group: {_id: '$group', total: {$sum: '$value'}}}]");
+		tasklet.afterPropertiesSet();
+		StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+		
+		// when
+		StepContribution contribution = execute(stepExecution);
+		
+		// then
+		assertThat( stepExecution.getReadCount(), is(6) );
+		assertThat( contribution.getWriteCount(), is(3) );
+	}
+
+	@Test
+	public void should_run_concurrent_executions() throws Exception {
+		// given
+		tasklet.setPipeline("[{$match: {value: {$lt: 6}}}, {$group: {_id: '$group', total: {$sum: '$value'}}}]");
+		tasklet.afterPropertiesSet();
+		StepExecution first = new StepExecution("step", new JobExecution(1L));
+		StepExecution second = new StepExecution("step", new JobExecution(2L));
+		ChunkContext firstContext = new ChunkContext( new StepContext(first) );
+		ChunkContext secondContext = new ChunkContext( new StepContext(second) );
+		
+		// when
+		boolean firstRunning = true;
+		boolean secondRunning = true;
+		while (firstRunning || secondRunning) {
+			if (firstRunning) {
+				firstRunning = tasklet.execute(first.createStepContribution(), firstContext).isContinuable();
+			}
+			if (secondRunning) {
+				secondRunning = tasklet.execute(second.createStepContribution(), secondContext).isContinuable();
+			}
+		}
+		
+		// then
+		assertThat( first.getReadCount(), is(6) );
+		assertThat( second.getReadCount(), is(6) );
+	}
+
+	@Test(expected = IllegalArgumentException.class) 
+	public void should_detect_missing_pipeline() throws Exception {
+		// when
+		tasklet.afterPropertiesSet();
+		
+		// then: expect exception
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		mongod.getDB(DB_NAME).getCollection(OUTPUT_COLLECTION_NAME).drop();
+		tearDownMongo();
+	}
+	
+	private StepContribution execute(StepExecution stepExecution) throws Exception {
+		ChunkContext chunkContext = new ChunkContext( new StepContext(stepExecution) );
+		StepContribution contribution;
+		RepeatStatus status;
+		
+		do {
+			contribution = stepExecution.createStepContribution();
+			status = tasklet.execute(contribution, chunkContext);
+		} while ( status.isContinuable() );
+		
+		return contribution;
+	}
+	
+}
@@ -0,0 +1,90 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBBucketItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBBucketItemWriterTest extends AbstractMongoDBTest {
+
+	private static final long MINUTE = 60 * 1000;
+	
+	/** Unit under test. */
+	protected MongoDBBucketItemWriter writer;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare unit under test
+		writer = new MongoDBBucketItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+		writer.setSeriesField("sensor");
+		writer.setTimeField("time");
+		writer.setBucketSpan(60 * MINUTE);
+		writer.setBucketSize(10);
+		writer.afterPropertiesSet();
+	}
+	
+	@Test
+	public void should_pack_measurements_into_buckets() throws Exception {
+		// given: two sensors, 90 minutes each
+		List<DBObject> measurements = new ArrayList<DBObject>();
+		for (int i=0; i<90; i++) {
+			measurements.add( measurement("s1", i) );
+			measurements.add( measurement("s2", i) );
+		}
+		
+		// when
+		writer.write( measurements.subList(0, 100) );
+		writer.write( measurements.subList(100, 180) );
+		
+		// then: 6 full buckets for the first hour, 3 for the following half hour
+		assertCollectionCount(18);
+		assertThat( collection.count( new BasicDBObject("count", 10) ), is(18L) );
+	}
+
+	@Test
+	public void should_fill_up_existing_bucket() throws Exception {
+		// when
+		for (int i=0; i<15; i++) {
+			List<DBObject> measurements = new ArrayList<DBObject>();
+			measurements.add( measurement("s1", i) );
+			writer.write(measurements);
+		}
+		
+		// then
+		assertCollectionCount(2);
+		assertThat( collection.count( new BasicDBObject("count", 10) ), is(1L) );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		tearDownMongo();
+	}
+	
+	private static DBObject measurement(String sensor, int minute) {
+		return new BasicDBObject("sensor", sensor)
+			.append("time", new Date(minute * MINUTE))
+			.append("value", minute);
+	}
+	
+}
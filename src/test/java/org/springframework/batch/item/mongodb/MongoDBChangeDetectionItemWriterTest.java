@@ -0,0 +1,88 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBChangeDetectionItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBChangeDetectionItemWriterTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBChangeDetectionItemWriter writer;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare unit under test
+		writer = new MongoDBChangeDetectionItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+	}
+	
+	@Test
+	public void should_write_only_changed_documents() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		writer.write( documents(0, 0, 0) );
+		insert("{_id: 3, name: 'manual'}");
+		collection.update( new BasicDBObject("_id", 2), new BasicDBObject("$set", new BasicDBObject("b", 99)) );
+		
+		// when
+		writer.write( documents(0, 1, 0, 0) );
+		
+		// then
+		assertCollectionCount(4);
+		assertThat( collection.findOne(new BasicDBObject("_id", 1)).get("a"), is((Object)1) );
+		// the stored hash is compared, not the stored content
+		assertThat( collection.findOne(new BasicDBObject("_id", 2)).get("b"), is((Object)99) );
+		assertThat( collection.findOne(new BasicDBObject("_id", 3)).get("a"), is((Object)0) );
+	}
+
+	@Test
+	public void should_skip_unchanged_documents_with_field_order_changed() throws Exception {
+		// given
+		writer.setCacheSize(10);
+		writer.afterPropertiesSet();
+		writer.write( documents(0, 0) );
+		collection.update( new BasicDBObject("_id", 1), new BasicDBObject("$set", new BasicDBObject("c", 1)) );
+		
+		// when
+		List<DBObject> docs = new ArrayList<DBObject>();
+		docs.add( new BasicDBObject("b", 0).append("a", 0).append("_id", 1) );
+		writer.write(docs);
+		
+		// then: the cached hash is unchanged, so the document is not written
+		assertThat( collection.findOne(new BasicDBObject("_id", 1)).get("c"), is((Object)1) );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		tearDownMongo();
+	}
+	
+	private static List<DBObject> documents(int... values) {
+		List<DBObject> docs = new ArrayList<DBObject>();
+		for (int i=0; i<values.length; i++) {
+			docs.add( new BasicDBObject("_id", i).append("a", values[i]).append("b", 0) );
+		}
+		return docs;
+	}
+	
+}
@@ -0,0 +1,111 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.classify.Classifier;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBClassifierItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBClassifierItemWriterTest extends AbstractMongoDBTest {
+
+	private static final String ODD_COLLECTION_NAME = COLLECTION_NAME + ".odd";
+	
+	private static final String ODD_DB_NAME = DB_NAME + "_odd";
+	
+	/** Unit under test. */
+	protected MongoDBClassifierItemWriter writer;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare unit under test
+		writer = new MongoDBClassifierItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+		writer.setClassifier(new Classifier<DBObject, String>() {
+			@Override
+			public String classify(DBObject doc) {
+				return (Integer)doc.get("i") % 2 == 0 ? null : ODD_COLLECTION_NAME;
+			}
+		});
+	}
+	
+	@Test
+	public void should_route_documents_to_collections() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		
+		// when
+		writer.write( createDocuments(5) );
+		
+		// then
+		assertCollectionCount(3);
+		assertThat( mongod.getDB(DB_NAME).getCollection(ODD_COLLECTION_NAME).count(), is(2L) );
+	}
+
+	@Test
+	public void should_insert_groups_in_parallel() throws Exception {
+		// given
+		writer.setGroupTaskExecutor(new SimpleAsyncTaskExecutor());
+		writer.afterPropertiesSet();
+		
+		// when
+		writer.write( createDocuments(6) );
+		
+		// then
+		assertCollectionCount(3);
+		assertThat( mongod.getDB(DB_NAME).getCollection(ODD_COLLECTION_NAME).count(), is(3L) );
+	}
+
+	@Test
+	public void should_route_documents_to_databases() throws Exception {
+		// given
+		writer.setDatabaseClassifier(new Classifier<DBObject, String>() {
+			@Override
+			public String classify(DBObject doc) {
+				return (Integer)doc.get("i") % 2 == 0 ? null : ODD_DB_NAME;
+			}
+		});
+		writer.afterPropertiesSet();
+		
+		// when
+		writer.write( createDocuments(5) );
+		
+		// then
+		assertCollectionCount(3);
+		assertThat( mongod.getDB(ODD_DB_NAME).getCollection(ODD_COLLECTION_NAME).count(), is(2L) );
+	}
+
+	@Test(expected = IllegalArgumentException.class) 
+	public void should_detect_missing_classifier() throws Exception {
+		// given
+		writer.setClassifier(null);
+		
+		// when
+		writer.afterPropertiesSet();
+		
+		// then: expect exception
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		mongod.getDB(DB_NAME).getCollection(ODD_COLLECTION_NAME).drop();
+		mongod.dropDatabase(ODD_DB_NAME);
+		tearDownMongo();
+	}
+	
+}
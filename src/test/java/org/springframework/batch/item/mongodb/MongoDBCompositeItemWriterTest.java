@@ -0,0 +1,199 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBCompositeItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBCompositeItemWriterTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBCompositeItemWriter<DBObject> writer;
+	
+	private MongoDBItemWriter mongoWriter;
+	
+	private final List<DBObject> written = new ArrayList<DBObject>();
+	
+	private boolean failing;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		mongoWriter = new MongoDBItemWriter();
+		mongoWriter.setMongo(mongod);
+		mongoWriter.setDb(DB_NAME);
+		mongoWriter.setCollection(COLLECTION_NAME);
+		
+		ItemWriter<DBObject> otherWriter = new ItemWriter<DBObject>() {
+			@Override
+			public void write(List<? extends DBObject> items) {
+				if (failing) {
+					throw new IllegalStateException("Expected failure");
+				}
+				written.addAll(items);
+			}
+		};
+		
+		// prepare unit under test
+		writer = new MongoDBCompositeItemWriter<DBObject>();
+		List<ItemWriter<? super DBObject>> delegates = new ArrayList<ItemWriter<? super DBObject>>();
+		delegates.add(mongoWriter);
+		delegates.add(otherWriter);
+		writer.setDelegates(delegates);
+		writer.setTaskExecutor(new SimpleAsyncTaskExecutor());
+	}
+	
+	@Test
+	public void should_write_to_all_delegates() throws Exception {
+		// given
+		mongoWriter.setTransactional(false);
+		mongoWriter.afterPropertiesSet();
+		writer.afterPropertiesSet();
+		
+		// when
+		writer.write( createDocuments(3) );
+		
+		// then
+		assertCollectionCount(3);
+		assertThat( written.size(), is(3) );
+	}
+	
+	@Test
+	public void should_insert_after_commit() throws Exception {
+		// given
+		mongoWriter.afterPropertiesSet();
+		writer.afterPropertiesSet();
+		
+		// when
+		long countBeforeCommit = writeInTransaction(3);
+		
+		// then
+		assertThat( countBeforeCommit, is(0L) );
+		assertCollectionCount(3);
+	}
+	
+	@Test
+	public void should_not_insert_after_rollback() throws Exception {
+		// given
+		mongoWriter.afterPropertiesSet();
+		writer.afterPropertiesSet();
+		failing = true;
+		
+		// when
+		try {
+			writeInTransaction(3);
+			fail("Exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		
+		// then
+		assertCollectionCount(0);
+	}
+	
+	@Test
+	public void should_not_coalesce_rolled_back_chunk() throws Exception {
+		// given
+		mongoWriter.setCoalesceMaxDocuments(4);
+		mongoWriter.afterPropertiesSet();
+		writer.afterPropertiesSet();
+		writeInTransaction(3);
+		
+		// when
+		failing = true;
+		try {
+			writeInTransaction(3);
+			fail("Exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		failing = false;
+		long countBeforeThreshold = collection.count();
+		writeInTransaction(1);
+		
+		// then: the committed chunks are inserted together, the rolled back one is not
+		assertThat( countBeforeThreshold, is(0L) );
+		assertCollectionCount(4);
+	}
+	
+	@Test(expected = MongoDBInsertFailedException.class)
+	public void should_report_failed_insert_after_commit() throws Exception {
+		// given
+		insert("{_id: 1}");
+		mongoWriter.afterPropertiesSet();
+		writer.afterPropertiesSet();
+		final List<DBObject> docs = new ArrayList<DBObject>();
+		docs.add( new BasicDBObject("_id", 1) );
+		
+		// when
+		writer.beforeChunk();
+		new TransactionTemplate(new ResourcelessTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					writer.write(docs);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		writer.afterChunk();
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void should_reject_checkpointing_delegate() throws Exception {
+		// given
+		mongoWriter.setCheckpointInterval(10);
+		
+		// when
+		writer.afterPropertiesSet();
+	}
+	
+	@After
+	public void tearDown() {
+		tearDownMongo();
+	}
+	
+	/**
+	 * @return Number of documents in the collection before the commit.
+	 */
+	private long writeInTransaction(final int n) {
+		return new TransactionTemplate(new ResourcelessTransactionManager()).execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				try {
+					writer.write( createDocuments(n) );
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				return collection.count();
+			}
+		});
+	}
+	
+}
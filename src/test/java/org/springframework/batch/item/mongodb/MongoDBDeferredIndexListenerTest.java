@@ -0,0 +1,100 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.UnknownHostException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+
+import com.mongodb.BasicDBObject;
+
+/**
+ * Tests for {@link MongoDBDeferredIndexListener}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBDeferredIndexListenerTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBDeferredIndexListener listener;
+	
+	private StepExecution stepExecution;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		collection.ensureIndex( new BasicDBObject("a", 1), "a_1", false );
+		collection.ensureIndex( new BasicDBObject("b", 1), "b_1", true );
+		
+		// prepare unit under test
+		listener = new MongoDBDeferredIndexListener();
+		listener.setMongo(mongod);
+		listener.setDb(DB_NAME);
+		listener.setCollection(COLLECTION_NAME);
+		listener.afterPropertiesSet();
+		
+		stepExecution = new StepExecution("step", new JobExecution(1L));
+	}
+	
+	@Test
+	public void should_drop_secondary_indexes_but_unique_ones() {
+		// when
+		listener.beforeStep(stepExecution);
+		
+		// then
+		assertThat( collection.getIndexInfo().size(), is(2) );
+	}
+
+	@Test
+	public void should_drop_unique_indexes() {
+		// given
+		listener.setKeepUnique(false);
+		
+		// when
+		listener.beforeStep(stepExecution);
+		
+		// then
+		assertThat( collection.getIndexInfo().size(), is(1) );
+	}
+	
+	@Test
+	public void should_rebuild_indexes_after_step() {
+		// given
+		listener.setKeepUnique(false);
+		listener.beforeStep(stepExecution);
+		insert("{a: 1, b: 1}");
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+		
+		// when
+		listener.afterStep(stepExecution);
+		
+		// then
+		assertThat( collection.getIndexInfo().size(), is(3) );
+	}
+
+	@Test
+	public void should_restore_indexes_after_failed_step() {
+		// given
+		listener.beforeStep(stepExecution);
+		stepExecution.setStatus(BatchStatus.FAILED);
+		
+		// when
+		listener.afterStep(stepExecution);
+		
+		// then
+		assertThat( collection.getIndexInfo().size(), is(3) );
+	}
+	
+	@After
+	public void tearDown() throws UnknownHostException {
+		tearDownMongo();
+	}
+	
+}
@@ -0,0 +1,129 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBDeleteItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBDeleteItemWriterTest extends AbstractMongoDBTest {
+
+	private static final String ARCHIVE_COLLECTION_NAME = COLLECTION_NAME + "_archive";
+	
+	/** Unit under test. */
+	protected MongoDBDeleteItemWriter writer;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		for (int i=0; i<10; i++) {
+			collection.insert( new BasicDBObject("_id", i) );
+		}
+		
+		// prepare unit under test
+		writer = new MongoDBDeleteItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setBatchSize(3);
+	}
+	
+	@Test
+	public void should_remove_documents_and_ids() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		List<Object> items = new ArrayList<Object>();
+		for (int i=0; i<4; i++) {
+			items.add( new BasicDBObject("_id", i) );
+			items.add( i + 4 );
+		}
+		
+		// when
+		writer.write(items);
+		
+		// then
+		assertCollectionCount(2);
+	}
+
+	@Test
+	public void should_move_documents_to_archive() throws Exception {
+		// given
+		writer.setArchiveCollection(ARCHIVE_COLLECTION_NAME);
+		writer.afterPropertiesSet();
+		DBCollection archive = mongod.getDB(DB_NAME).getCollection(ARCHIVE_COLLECTION_NAME);
+		archive.insert( new BasicDBObject("_id", 0) );
+		List<Object> items = new ArrayList<Object>();
+		for (int i=0; i<5; i++) {
+			items.add(i);
+		}
+		
+		// when
+		writer.write(items);
+		
+		// then
+		assertCollectionCount(5);
+		assertThat( archive.count(), is(5L) );
+	}
+
+	@Test
+	public void should_keep_documents_that_were_not_archived() throws Exception {
+		// given
+		writer.setArchiveCollection(ARCHIVE_COLLECTION_NAME);
+		writer.afterPropertiesSet();
+		DBCollection archive = mongod.getDB(DB_NAME).getCollection(ARCHIVE_COLLECTION_NAME);
+		archive.ensureIndex( new BasicDBObject("name", 1), "name", true );
+		archive.insert( new BasicDBObject("_id", 0) );
+		archive.insert( new BasicDBObject("_id", 100).append("name", "taken") );
+		collection.update( new BasicDBObject("_id", 1), new BasicDBObject("_id", 1).append("name", "taken") );
+		List<Object> items = new ArrayList<Object>();
+		for (int i=0; i<3; i++) {
+			items.add(i);
+		}
+		
+		// when
+		try {
+			writer.write(items);
+			fail("Exception expected");
+		} catch (MongoDBInsertFailedException e) {
+			// expected
+		}
+		
+		// then
+		assertCollectionCount(10);
+		assertThat( archive.count( new BasicDBObject("_id", 1) ), is(0L) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void should_detect_missing_id() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		List<DBObject> items = createDocuments(1);
+		
+		// when
+		writer.write(items);
+		
+		// then: expect exception
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		mongod.getDB(DB_NAME).getCollection(ARCHIVE_COLLECTION_NAME).drop();
+		tearDownMongo();
+	}
+	
+}
@@ -0,0 +1,98 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+
+import com.mongodb.gridfs.GridFS;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSInputFile;
+
+/**
+ * Tests for {@link MongoDBGridFSItemReader}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBGridFSItemReaderTest extends AbstractMongoDBTest {
+
+	private static final String BUCKET = "attachments";
+	
+	/** Unit under test. */
+	protected MongoDBGridFSItemReader reader;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		GridFS gridFS = new GridFS(mongod.getDB(DB_NAME), BUCKET);
+		for (int i=0; i<5; i++) {
+			GridFSInputFile file = gridFS.createFile( new byte[] {(byte)i} );
+			file.setFilename("file-" + i);
+			file.save();
+		}
+		
+		// prepare unit under test
+		reader = new MongoDBGridFSItemReader();
+		reader.setMongo(mongod);
+		reader.setDb(DB_NAME);
+		reader.setBucket(BUCKET);
+		reader.afterPropertiesSet();
+	}
+	
+	@Test
+	public void should_read_files_with_content() throws Exception {
+		// when
+		List<GridFSDBFile> files = readAll( new ExecutionContext() );
+		
+		// then
+		assertThat( files.size(), is(5) );
+		assertThat( files.get(4).getFilename(), is("file-4") );
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		files.get(4).writeTo(content);
+		assertThat( content.toByteArray()[0], is((byte)4) );
+	}
+	
+	@Test
+	public void should_restart_after_last_read_file() throws Exception {
+		// given
+		ExecutionContext executionContext = new ExecutionContext();
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+		
+		// when
+		List<GridFSDBFile> files = readAll(executionContext);
+		
+		// then
+		assertThat( files.size(), is(3) );
+		assertThat( files.get(0).getFilename(), is("file-2") );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		mongod.getDB(DB_NAME).getCollection(BUCKET + ".files").drop();
+		mongod.getDB(DB_NAME).getCollection(BUCKET + ".chunks").drop();
+		tearDownMongo();
+	}
+	
+	private List<GridFSDBFile> readAll(ExecutionContext executionContext) throws Exception {
+		List<GridFSDBFile> files = new ArrayList<GridFSDBFile>();
+		reader.open(executionContext);
+		for (GridFSDBFile file = reader.read(); file != null; file = reader.read()) {
+			files.add(file);
+		}
+		reader.close();
+		return files;
+	}
+	
+}
@@ -0,0 +1,103 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import com.mongodb.gridfs.GridFSDBFile;
+
+/**
+ * Tests for {@link MongoDBGridFSItemWriter} and {@link MongoDBGridFSItemReader}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBGridFSItemWriterTest extends AbstractMongoDBTest {
+
+	private static final String BUCKET = "attachments";
+	
+	/** Unit under test. */
+	protected MongoDBGridFSItemWriter writer;
+	
+	protected MongoDBGridFSItemReader reader;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare units under test
+		writer = new MongoDBGridFSItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setBucket(BUCKET);
+		writer.setChunkSize(1000);
+		writer.setChunkBatchSize(3);
+		writer.setSkipExisting(true);
+		writer.afterPropertiesSet();
+		
+		reader = new MongoDBGridFSItemReader();
+		reader.setMongo(mongod);
+		reader.setDb(DB_NAME);
+		reader.setBucket(BUCKET);
+		reader.afterPropertiesSet();
+	}
+	
+	@Test
+	public void should_write_and_read_files() throws Exception {
+		// given
+		List<Resource> resources = new ArrayList<Resource>();
+		resources.add( resource("a.bin", 10500) );
+		resources.add( resource("b.bin", 0) );
+		
+		// when
+		writer.write(resources);
+		writer.write(resources);
+		
+		// then
+		reader.open( new ExecutionContext() );
+		GridFSDBFile a = reader.read();
+		GridFSDBFile b = reader.read();
+		assertThat( reader.read() == null, is(true) );
+		reader.close();
+		
+		a.validate();
+		assertThat( a.getFilename(), is("a.bin") );
+		assertThat( a.numChunks(), is(11) );
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		a.writeTo(content);
+		assertThat( content.toByteArray()[10499], is((byte)(10499 % 127)) );
+		assertThat( b.getLength(), is(0L) );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		mongod.getDB(DB_NAME).getCollection(BUCKET + ".files").drop();
+		mongod.getDB(DB_NAME).getCollection(BUCKET + ".chunks").drop();
+		tearDownMongo();
+	}
+	
+	private static Resource resource(final String filename, int length) {
+		byte[] content = new byte[length];
+		for (int i=0; i<length; i++) {
+			content[i] = (byte)(i % 127);
+		}
+		
+		return new ByteArrayResource(content) {
+			@Override
+			public String getFilename() {
+				return filename;
+			}
+		};
+	}
+	
+}
@@ -1,15 +1,36 @@
 package org.springframework.batch.item.mongodb;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+
+import org.bson.types.ObjectId;
 
 /**
  * Tests for {@link MongoDBItemWriter}.
@@ -140,6 +161,362 @@ public class MongoDBItemWriterTest extends AbstractMongoDBTest {
 		assertCollectionCount(3);
 	}
 
+	@Test
+	public void should_write_after_commit() throws Exception {
+		// when
+		writeInTransaction(createDocuments(3), false);
+		
+		// then
+		assertCollectionCount(3);
+	}
+
+	@Test
+	public void should_not_write_after_rollback() throws Exception {
+		// when
+		writeInTransaction(createDocuments(3), true);
+		
+		// then
+		assertCollectionCount(0);
+	}
+
+	@Test
+	public void should_write_concurrent_transactions() throws Exception {
+		// given
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i=0; i<4; i++) {
+			threads.add( new Thread() {
+				@Override
+				public void run() {
+					writeInTransaction(createDocuments(5), false);
+				}
+			});
+		}
+		
+		// when
+		for (Thread thread: threads) {
+			thread.start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		
+		// then
+		assertCollectionCount(20);
+	}
+
+	@Test
+	public void should_write_pre_encoded_documents() throws Exception {
+		// given
+		writer.setPreEncode(true);
+		writer.setEncodingTaskExecutor( new SimpleAsyncTaskExecutor() );
+		writer.setEncodingSliceSize(3);
+		
+		// when
+		writeInTransaction(createDocuments(10), false);
+		
+		// then
+		assertCollectionCount(10);
+	}
+
+	@Test
+	public void should_write_spilled_documents() throws Exception {
+		// given
+		writer.setSpillThreshold(100);
+		writer.setSpillBatchSize(3);
+		
+		// when
+		writeInTransaction(createDocuments(10), false);
+		
+		// then
+		assertCollectionCount(10);
+	}
+
+	@Test
+	public void should_replay_journal_of_committed_chunks() throws Exception {
+		// given: a journal with a committed and an uncommitted chunk
+		File directory = File.createTempFile("journal-", "");
+		directory.delete();
+		BsonJournal journal = new BsonJournal(directory, "MongoDBItemWriter.journal", 1024, 
+				DefaultDBEncoder.FACTORY.create());
+		journal.append( createDocumentsWithIds(3) );
+		journal.append( createDocumentsWithIds(2) );
+		journal.close();
+		ExecutionContext executionContext = new ExecutionContext();
+		executionContext.putLong("MongoDBItemWriter.journal.sequence", 1);
+		writer.setJournalDirectory(directory);
+		
+		// when
+		writer.open(executionContext);
+		writer.close();
+		
+		// then
+		assertCollectionCount(3);
+		directory.delete();
+	}
+
+	@Test
+	public void should_coalesce_chunks() throws Exception {
+		writer.setTransactional(false);
+		writer.setCoalesceMaxDocuments(5);
+		
+		// when
+		writer.write( createDocuments(3) );
+		
+		// then
+		assertCollectionCount(0);
+		
+		// when
+		writer.write( createDocuments(3) );
+		
+		// then
+		assertCollectionCount(6);
+	}
+
+	@Test
+	public void should_flush_coalesced_documents_after_step() throws Exception {
+		writer.setTransactional(false);
+		writer.setCoalesceMaxDocuments(5);
+		StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+		
+		// when
+		writer.write( createDocuments(3) );
+		writer.afterStep(stepExecution);
+		
+		// then
+		assertCollectionCount(3);
+	}
+
+	@Test
+	public void should_restore_coalesced_documents_on_open() throws Exception {
+		writer.setTransactional(false);
+		writer.setCoalesceMaxDocuments(5);
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.write( createDocuments(3) );
+		writer.update(executionContext);
+		
+		// when
+		writer.open(executionContext);
+		writer.write( createDocuments(2) );
+		
+		// then
+		assertCollectionCount(5);
+	}
+
+	@Test
+	public void should_swap_staging_collection_after_step() throws Exception {
+		writer.setTransactional(false);
+		writer.setStagingCollection(COLLECTION_NAME + "_staging");
+		StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+		insert("{old: true}");
+		
+		// when
+		writer.beforeStep(stepExecution);
+		writer.write( createDocuments(3) );
+		
+		// then
+		assertCollectionCount(1);
+		
+		// when
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+		writer.afterStep(stepExecution);
+		
+		// then
+		assertCollectionCount(3);
+	}
+
+	@Test
+	public void should_write_unacknowledged_chunks_with_checkpoints() throws Exception {
+		writer.setTransactional(false);
+		writer.setCheckpointInterval(2);
+		StepExecution stepExecution = new StepExecution("step", new JobExecution(1L));
+		writer.beforeStep(stepExecution);
+		
+		// when: the checkpoints count more ids than fit into one $in query
+		for (int i=0; i<3; i++) {
+			writer.write( createDocuments(1500) );
+			writer.afterChunk();
+		}
+		ExitStatus exitStatus = writer.afterStep(stepExecution);
+		
+		// then
+		assertCollectionCount(4500);
+		assertThat( exitStatus == null, is(true) );
+		assertThat( stepExecution.getStatus(), is(BatchStatus.STARTING) );
+		assertThat( stepExecution.getFailureExceptions().isEmpty(), is(true) );
+	}
+
+	@Test
+	public void should_fail_chunk_when_checkpoint_misses_documents() throws Exception {
+		writer.setTransactional(false);
+		writer.setCheckpointInterval(2);
+		writer.beforeStep( new StepExecution("step", new JobExecution(1L)) );
+		writer.write( createDocuments(1500) );
+		writer.afterChunk();
+		
+		// when: a document of the first chunk is lost before the checkpoint
+		collection.remove( collection.findOne() );
+		writer.write( createDocuments(1500) );
+		try {
+			writer.afterChunk();
+			fail("Exception expected");
+		} catch (MongoDBInsertFailedException e) {
+			// then
+			assertThat( e.getCause().getMessage().contains("1 of 3000"), is(true) );
+		}
+	}
+
+	@Test(expected = MongoDBInsertFailedException.class)
+	public void should_fail_checkpoint_on_lost_documents() throws Exception {
+		writer.setTransactional(false);
+		writer.setCheckpointInterval(2);
+		List<DBObject> docs = new ArrayList<DBObject>();
+		docs.add( new BasicDBObject("_id", 1) );
+		
+		// when
+		writer.write(docs);
+		writer.afterChunk();
+		writer.write(docs);
+		writer.afterChunk();
+		
+		// then: expect exception
+	}
+
+	@Test
+	public void should_assign_ids_when_writing() throws Exception {
+		// given
+		writer.setAssignIds(true);
+		List<DBObject> docs = createDocuments(2);
+		
+		// when
+		writer.write(docs);
+		
+		// then
+		assertThat( docs.get(0).get("_id") != null, is(true) );
+		assertCollectionCount(2);
+	}
+
+	@Test
+	public void should_retry_insert_after_network_error() throws Exception {
+		// given
+		writer = new MongoDBItemWriter() {
+			private boolean failed;
+			
+			@Override
+			protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
+				// the documents reach the server, but the connection breaks
+				super.doInsert(databaseName, collectionName, wc, docs);
+				if (!failed) {
+					failed = true;
+					throw new MongoException.Network("connection reset", new IOException());
+				}
+			}
+		};
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+		writer.setAssignIds(true);
+		writer.setRetryLimit(2);
+		writer.setRetryBackoff(1);
+		writer.setWriteConcern(WriteConcern.ACKNOWLEDGED);
+		writer.afterPropertiesSet();
+		
+		// when
+		writer.write( createDocuments(3) );
+		
+		// then
+		assertCollectionCount(3);
+	}
+
+	@Test(expected = MongoDBInsertFailedException.class)
+	public void should_detect_unique_index_violation_on_retry() throws Exception {
+		// given
+		collection.ensureIndex( new BasicDBObject("i", 1), "i", true );
+		insert("{i: 2}");
+		writer = new MongoDBItemWriter() {
+			private boolean failed;
+			
+			@Override
+			protected void doInsert(String databaseName, String collectionName, WriteConcern wc, List<DBObject> docs) {
+				if (!failed) {
+					// only the first document reaches the server before the connection breaks
+					failed = true;
+					super.doInsert(databaseName, collectionName, wc, docs.subList(0, 1));
+					throw new MongoException.Network("connection reset", new IOException());
+				}
+				super.doInsert(databaseName, collectionName, wc, docs);
+			}
+		};
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+		writer.setAssignIds(true);
+		writer.setRetryLimit(2);
+		writer.setRetryBackoff(1);
+		writer.setWriteConcern(WriteConcern.ACKNOWLEDGED);
+		writer.afterPropertiesSet();
+		
+		// when: the retry reports a duplicate _id and a duplicate i
+		writer.write( createDocuments(3) );
+		
+		// then: expect exception
+	}
+
+	@Test
+	public void should_drop_duplicates_within_chunk() throws Exception {
+		// given
+		writer.setDeduplicationKey("i");
+		List<DBObject> docs = createDocuments(3);
+		docs.addAll( createDocuments(2) );
+		
+		// when
+		writer.write(docs);
+		
+		// then
+		assertCollectionCount(3);
+		assertThat( writer.getDuplicateCount(), is(2L) );
+	}
+
+	@Test
+	public void should_drop_duplicates_across_chunks() throws Exception {
+		// given
+		writer.setDeduplicationKey("i");
+		writer.setDeduplicationAcrossStep(true);
+		writer.afterPropertiesSet();
+		ExecutionContext executionContext = new ExecutionContext();
+		writer.open(executionContext);
+		
+		// when
+		writeInTransaction(createDocuments(3), true);
+		writeInTransaction(createDocuments(3), false);
+		writeInTransaction(createDocuments(4), false);
+		writer.update(executionContext);
+		
+		// then: keys of the rolled back chunk are not known
+		assertCollectionCount(4);
+		assertThat( executionContext.getLong("MongoDBItemWriter.duplicates"), is(3L) );
+	}
+
+	@Test
+	public void should_confirm_bloom_filter_matches() throws Exception {
+		// given
+		writer.setDeduplicationKey("i");
+		writer.setDeduplicationAcrossStep(true);
+		writer.setDeduplicationBloomFilterSize(1000);
+		writer.afterPropertiesSet();
+		writer.open( new ExecutionContext() );
+		writer.write( createDocuments(3) );
+		collection.remove( new BasicDBObject("i", 0) );
+		
+		// when
+		writer.write( createDocuments(3) );
+		
+		// then: the removed key is not confirmed by the server
+		assertCollectionCount(3);
+		assertThat( writer.getDuplicateCount(), is(2L) );
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void should_detect_missing_converter() throws Exception {
 		// given
@@ -212,6 +589,34 @@ public class MongoDBItemWriterTest extends AbstractMongoDBTest {
 	}		
 	
 
+	private void writeInTransaction(final List<DBObject> docs, final boolean rollback) {
+		new TransactionTemplate(new ResourcelessTransactionManager()).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					writer.write(docs);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				if (rollback) {
+					status.setRollbackOnly();
+				}
+			}
+		});
+		writer.afterChunk();
+	}
+
+	/**
+	 * @return Documents with ids, as {@link MongoDBItemWriter} journals them.
+	 */
+	private static List<DBObject> createDocumentsWithIds(int n) {
+		List<DBObject> docs = createDocuments(n);
+		for (DBObject doc: docs) {
+			doc.put("_id", new ObjectId());
+		}
+		return docs;
+	}
+	
 	private List<User> createUsers() {
 		List<User> users = new ArrayList<User>();
 		for (int i=0;i<3;i++) {
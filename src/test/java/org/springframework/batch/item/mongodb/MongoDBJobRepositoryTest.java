@@ -0,0 +1,131 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.JobExecutionDao;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Tests for the MongoDB DAOs, used through a {@link JobRepository} created by 
+ * {@link MongoDBJobRepositoryFactoryBean}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBJobRepositoryTest extends AbstractMongoDBTest {
+
+	private static final String PREFIX = "test_batch_";
+	
+	/** Unit under test. */
+	protected JobRepository jobRepository;
+	
+	private JobExecutionDao jobExecutionDao;
+	
+	private JobParameters jobParameters;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare unit under test
+		MongoDBJobRepositoryFactoryBean factory = new MongoDBJobRepositoryFactoryBean();
+		factory.setMongo(mongod);
+		factory.setDb(DB_NAME);
+		factory.setCollectionPrefix(PREFIX);
+		factory.afterPropertiesSet();
+		jobRepository = (JobRepository)factory.getObject();
+		jobExecutionDao = factory.createJobExecutionDao();
+		
+		jobParameters = new JobParametersBuilder()
+			.addString("file", "users.json").addLong("run", 1L).addDate("date", new Date(0)).toJobParameters();
+	}
+	
+	@Test
+	public void should_find_job_instance_by_parameters() throws Exception {
+		// given
+		JobExecution jobExecution = jobRepository.createJobExecution("job", jobParameters);
+		
+		// when
+		boolean exists = jobRepository.isJobInstanceExists("job", new JobParametersBuilder()
+			.addDate("date", new Date(0)).addLong("run", 1L).addString("file", "users.json").toJobParameters());
+		
+		// then
+		assertThat( exists, is(true) );
+		assertThat( jobRepository.getLastJobExecution("job", jobParameters).getId(), is(jobExecution.getId()) );
+	}
+	
+	@Test
+	public void should_store_step_execution_and_context() throws Exception {
+		// given
+		JobExecution jobExecution = jobRepository.createJobExecution("job", jobParameters);
+		StepExecution stepExecution = jobExecution.createStepExecution("step");
+		jobRepository.add(stepExecution);
+		
+		// when
+		stepExecution.setReadCount(42);
+		stepExecution.getExecutionContext().putLong("key.with.dots", 7L);
+		stepExecution.getExecutionContext().put("date", new java.sql.Date(0));
+		jobRepository.update(stepExecution);
+		jobRepository.updateExecutionContext(stepExecution);
+		StepExecution last = jobRepository.getLastStepExecution(jobExecution.getJobInstance(), "step");
+		
+		// then
+		assertThat( last.getReadCount(), is(42) );
+		assertThat( last.getVersion(), is(2) );
+		assertThat( last.getExecutionContext().getLong("key.with.dots"), is(7L) );
+		assertThat( last.getExecutionContext().get("date"), is((Object)new java.sql.Date(0)) );
+	}
+	
+	@Test(expected = OptimisticLockingFailureException.class)
+	public void should_reject_stale_update() throws Exception {
+		// given
+		JobExecution jobExecution = jobRepository.createJobExecution("job", jobParameters);
+		StepExecution stepExecution = jobExecution.createStepExecution("step");
+		jobRepository.add(stepExecution);
+		jobRepository.update(stepExecution);
+		
+		// when
+		stepExecution.setVersion(1);
+		jobRepository.update(stepExecution);
+	}
+	
+	@Test
+	public void should_synchronize_stopped_status() throws Exception {
+		// given
+		JobExecution jobExecution = jobRepository.createJobExecution("job", jobParameters);
+		JobExecution stopped = jobRepository.getLastJobExecution("job", jobParameters);
+		stopped.setStatus(BatchStatus.STOPPING);
+		jobRepository.update(stopped);
+		
+		// when
+		jobExecution.setStatus(BatchStatus.STARTED);
+		jobExecutionDao.synchronizeStatus(jobExecution);
+		
+		// then
+		assertThat( jobExecution.getStatus(), is(BatchStatus.STOPPING) );
+		assertThat( jobExecution.getVersion(), is(2) );
+	}
+	
+	@After
+	public void tearDown() {
+		for (String name: mongod.getDB(DB_NAME).getCollectionNames()) {
+			if ( name.startsWith(PREFIX) ) {
+				mongod.getDB(DB_NAME).getCollection(name).drop();
+			}
+		}
+		tearDownMongo();
+	}
+	
+}
@@ -0,0 +1,156 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Tests for {@link MongoDBJsonExportItemWriter}.
+ */
+public class MongoDBJsonExportItemWriterTest {
+
+	/** Unit under test. */
+	protected MongoDBJsonExportItemWriter writer;
+	
+	private File file;
+	
+	private ExecutionContext executionContext = new ExecutionContext();
+	
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("export-", ".json");
+		
+		// prepare unit under test
+		writer = new MongoDBJsonExportItemWriter();
+		writer.setResource( new FileSystemResource(file) );
+		writer.setBufferSize(64);
+	}
+	
+	@Test
+	public void should_write_one_document_per_line() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		writer.open(executionContext);
+		
+		// when
+		writer.write( AbstractMongoDBTest.createDocuments(10) );
+		writer.write( AbstractMongoDBTest.createDocuments(5) );
+		writer.close();
+		
+		// then
+		List<DBObject> docs = readDocuments(new FileInputStream(file));
+		assertThat( docs.size(), is(15) );
+		assertThat( docs.get(9).get("i"), is((Object)9) );
+	}
+	
+	@Test
+	public void should_write_gzip_member_per_chunk() throws Exception {
+		// given
+		writer.setGzip(true);
+		writer.afterPropertiesSet();
+		writer.open(executionContext);
+		
+		// when
+		writer.write( AbstractMongoDBTest.createDocuments(100) );
+		writer.write( AbstractMongoDBTest.createDocuments(3) );
+		writer.close();
+		
+		// then
+		List<DBObject> docs = readDocuments(new GZIPInputStream(new FileInputStream(file)));
+		assertThat( docs.size(), is(103) );
+		assertThat( docs.get(102).get("i"), is((Object)2) );
+	}
+	
+	@Test
+	public void should_truncate_to_offset_on_restart() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		writer.open(executionContext);
+		writer.write( AbstractMongoDBTest.createDocuments(3) );
+		writer.update(executionContext);
+		writer.write( AbstractMongoDBTest.createDocuments(4) );
+		writer.close();
+		
+		// when
+		writer.open(executionContext);
+		writer.write( AbstractMongoDBTest.createDocuments(2) );
+		writer.close();
+		
+		// then
+		assertThat( readDocuments(new FileInputStream(file)).size(), is(5) );
+	}
+	
+	@Test
+	public void should_truncate_chunk_on_rollback() throws Exception {
+		// given
+		writer.afterPropertiesSet();
+		writer.open(executionContext);
+		writer.write( AbstractMongoDBTest.createDocuments(3) );
+		
+		// when
+		try {
+			new TransactionTemplate(new ResourcelessTransactionManager()).execute(new TransactionCallback<Void>() {
+				@Override
+				public Void doInTransaction(TransactionStatus status) {
+					try {
+						writer.write( AbstractMongoDBTest.createDocuments(4) );
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+					throw new IllegalStateException("Expected failure");
+				}
+			});
+			fail("Exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		writer.close();
+		
+		// then
+		assertThat( readDocuments(new FileInputStream(file)).size(), is(3) );
+	}
+	
+	@After
+	public void tearDown() {
+		writer.close();
+		file.delete();
+	}
+	
+	private static List<DBObject> readDocuments(InputStream in) throws IOException {
+		final List<DBObject> docs = new ArrayList<DBObject>();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		try {
+			String line;
+			while ( (line = reader.readLine()) != null ) {
+				docs.add( (DBObject)JSON.parse(line) );
+			}
+		} finally {
+			reader.close();
+		}
+		return docs;
+	}
+	
+}
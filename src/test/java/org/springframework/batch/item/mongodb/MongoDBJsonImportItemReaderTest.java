@@ -0,0 +1,162 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBJsonImportItemReader} and {@link MongoDBJsonLinesPartitioner}.
+ */
+public class MongoDBJsonImportItemReaderTest {
+
+	/** Unit under test. */
+	protected MongoDBJsonImportItemReader reader;
+	
+	private File file;
+	
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("import-", ".json");
+		
+		// prepare unit under test
+		reader = new MongoDBJsonImportItemReader();
+		reader.setResource( new FileSystemResource(file) );
+		// small windows make lines cross the window ends
+		reader.setWindowSize(16);
+	}
+	
+	@Test
+	public void should_read_all_lines() throws Exception {
+		// given
+		writeLines(100);
+		reader.afterPropertiesSet();
+		
+		// when
+		List<DBObject> docs = readAll(new ExecutionContext());
+		
+		// then
+		assertThat( docs.size(), is(100) );
+		assertThat( docs.get(99).get("i"), is((Object)99) );
+		assertThat( docs.get(99).get("name"), is((Object)"name-99") );
+	}
+	
+	@Test
+	public void should_restart_at_byte_offset() throws Exception {
+		// given
+		writeLines(10);
+		reader.afterPropertiesSet();
+		ExecutionContext executionContext = new ExecutionContext();
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+		
+		// when
+		List<DBObject> docs = readAll(executionContext);
+		
+		// then
+		assertThat( docs.size(), is(7) );
+		assertThat( docs.get(0).get("i"), is((Object)3) );
+	}
+	
+	@Test
+	public void should_read_partitions_without_gaps_or_overlaps() throws Exception {
+		// given
+		writeLines(1000);
+		MongoDBJsonLinesPartitioner partitioner = new MongoDBJsonLinesPartitioner();
+		partitioner.setResource( new FileSystemResource(file) );
+		partitioner.afterPropertiesSet();
+		
+		// when
+		Map<String, ExecutionContext> partitions = partitioner.partition(7);
+		List<DBObject> docs = new ArrayList<DBObject>();
+		for (ExecutionContext partition: partitions.values()) {
+			reader.setStartOffset( partition.getLong(MongoDBJsonLinesPartitioner.START_OFFSET) );
+			reader.setEndOffset( partition.getLong(MongoDBJsonLinesPartitioner.END_OFFSET) );
+			docs.addAll( readAll(new ExecutionContext()) );
+		}
+		
+		// then
+		assertThat( partitions.size(), is(7) );
+		assertThat( docs.size(), is(1000) );
+		for (int i = 0; i < docs.size(); i++) {
+			assertThat( docs.get(i).get("i"), is((Object)i) );
+		}
+	}
+	
+	@Test
+	public void should_skip_blank_lines_and_report_invalid_ones() throws Exception {
+		// given
+		write("{\"i\": 1}\n\n   \r\n{\"i\": \n{\"i\": 2}");
+		reader.afterPropertiesSet();
+		reader.open(new ExecutionContext());
+		
+		// when
+		DBObject first = reader.read();
+		try {
+			reader.read();
+			fail("ParseException expected");
+		} catch (ParseException e) {
+			// expected
+		}
+		DBObject second = reader.read();
+		
+		// then
+		assertThat( first.get("i"), is((Object)1) );
+		assertThat( second.get("i"), is((Object)2) );
+		assertThat( reader.read() == null, is(true) );
+	}
+	
+	@After
+	public void tearDown() {
+		reader.close();
+		file.delete();
+	}
+	
+	private List<DBObject> readAll(ExecutionContext executionContext) throws Exception {
+		List<DBObject> docs = new ArrayList<DBObject>();
+		reader.open(executionContext);
+		DBObject doc;
+		while ( (doc = reader.read()) != null ) {
+			docs.add(doc);
+		}
+		reader.close();
+		return docs;
+	}
+	
+	private void writeLines(int n) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			lines.append("{\"i\": ").append(i).append(", \"name\": \"name-").append(i).append("\"}\n");
+		}
+		write(lines.toString());
+	}
+	
+	private void write(String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write( content.getBytes("UTF-8") );
+		} finally {
+			out.close();
+		}
+	}
+	
+}
@@ -0,0 +1,98 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Tests for {@link MongoDBLookupItemProcessor}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBLookupItemProcessorTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBLookupItemProcessor processor;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		insert("{_id: 'de', name: 'Germany', currency: 'EUR'}");
+		insert("{_id: 'fr', name: 'France', currency: 'EUR'}");
+		
+		// prepare unit under test
+		processor = new MongoDBLookupItemProcessor();
+		processor.setMongo(mongod);
+		processor.setDb(DB_NAME);
+		processor.setCollection(COLLECTION_NAME);
+		processor.setKeyField("country");
+		processor.setKeys("{name: 1}");
+	}
+	
+	@Test
+	public void should_enrich_documents_of_chunk() throws Exception {
+		// given
+		processor.afterPropertiesSet();
+		DBObject de = new BasicDBObject("country", "de");
+		DBObject fr = new BasicDBObject("country", "fr");
+		processor.afterRead(de);
+		processor.afterRead(fr);
+		
+		// when
+		processor.process(de);
+		collection.remove( new BasicDBObject("_id", "fr") );
+		processor.process(fr);
+		
+		// then: both were looked up with the first query
+		assertThat( de.get("name"), is((Object)"Germany") );
+		assertThat( fr.get("name"), is((Object)"France") );
+		assertThat( fr.containsField("currency"), is(false) );
+	}
+
+	@Test
+	public void should_cache_missing_keys() throws Exception {
+		// given
+		processor.setTargetField("country");
+		processor.setFilterMissing(true);
+		processor.afterPropertiesSet();
+		
+		// when
+		DBObject first = processor.process( new BasicDBObject("country", "it") );
+		insert("{_id: 'it', name: 'Italy'}");
+		DBObject second = processor.process( new BasicDBObject("country", "it") );
+		
+		// then
+		assertThat( first == null, is(true) );
+		assertThat( second == null, is(true) );
+	}
+
+	@Test
+	public void should_expire_cached_documents() throws Exception {
+		// given
+		processor.setTargetField("country");
+		processor.setCacheTtl(1);
+		processor.afterPropertiesSet();
+		processor.process( new BasicDBObject("country", "it") );
+		insert("{_id: 'it', name: 'Italy'}");
+		Thread.sleep(10);
+		
+		// when
+		DBObject doc = processor.process( new BasicDBObject("country", "it") );
+		
+		// then
+		assertThat( ((DBObject)doc.get("country")).get("name"), is((Object)"Italy") );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		tearDownMongo();
+	}
+	
+}
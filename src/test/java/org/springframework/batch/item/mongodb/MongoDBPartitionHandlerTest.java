@@ -0,0 +1,167 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.support.SimplePartitioner;
+import org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+
+import com.mongodb.BasicDBObject;
+
+/**
+ * Tests for {@link MongoDBPartitionHandler} and {@link MongoDBPartitionWorker}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBPartitionHandlerTest extends AbstractMongoDBTest {
+
+	private static final String PREFIX = "test_batch_";
+	
+	private static final String QUEUE = PREFIX + "partitions";
+	
+	/** Unit under test. */
+	protected MongoDBPartitionHandler handler;
+	
+	private JobRepository jobRepository;
+	
+	private JobExplorer jobExplorer;
+	
+	private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		MongoDBJobRepositoryFactoryBean factory = new MongoDBJobRepositoryFactoryBean();
+		factory.setMongo(mongod);
+		factory.setDb(DB_NAME);
+		factory.setCollectionPrefix(PREFIX);
+		factory.afterPropertiesSet();
+		jobRepository = (JobRepository)factory.getObject();
+		jobExplorer = factory.getJobExplorer();
+		
+		// prepare unit under test
+		handler = new MongoDBPartitionHandler();
+		handler.setMongo(mongod);
+		handler.setDb(DB_NAME);
+		handler.setCollection(QUEUE);
+		handler.setStepName("worker");
+		handler.setJobExplorer(jobExplorer);
+		handler.setGridSize(3);
+		handler.setPollInterval(50);
+		handler.setTimeout(10000);
+		handler.afterPropertiesSet();
+	}
+	
+	@Test
+	public void should_run_partitions_on_worker() throws Exception {
+		// given
+		MongoDBPartitionWorker worker = createWorker("worker-1");
+		Thread thread = new Thread(worker);
+		thread.start();
+		
+		// when
+		Collection<StepExecution> stepExecutions = handle();
+		worker.destroy();
+		thread.join();
+		
+		// then
+		assertThat( stepExecutions.size(), is(3) );
+		for (StepExecution stepExecution: stepExecutions) {
+			assertThat( stepExecution.getStatus(), is(BatchStatus.COMPLETED) );
+		}
+		assertThat( executed.size(), is(3) );
+		assertThat( mongod.getDB(DB_NAME).getCollection(QUEUE).count(), is(0L) );
+	}
+	
+	@Test
+	public void should_reclaim_stale_partition() throws Exception {
+		// given
+		MongoDBPartitionWorker worker = createWorker("worker-2");
+		JobExecution jobExecution = jobRepository.createJobExecution("job", new JobParametersBuilder().toJobParameters());
+		StepExecution stepExecution = jobExecution.createStepExecution("worker:partition0");
+		jobRepository.add(stepExecution);
+		mongod.getDB(DB_NAME).getCollection(QUEUE).insert( new BasicDBObject("_id", stepExecution.getId())
+			.append("jobExecutionId", jobExecution.getId())
+			.append("stepName", "worker")
+			.append("state", "CLAIMED")
+			.append("owner", "dead-worker")
+			.append("heartbeat", new Date(0)) );
+		
+		// when
+		boolean processed = worker.processNext();
+		worker.destroy();
+		
+		// then
+		assertThat( processed, is(true) );
+		assertThat( executed.size(), is(1) );
+		assertThat( mongod.getDB(DB_NAME).getCollection(QUEUE).findOne().get("state"), is((Object)"DONE") );
+	}
+	
+	@After
+	public void tearDown() {
+		for (String name: mongod.getDB(DB_NAME).getCollectionNames()) {
+			if ( name.startsWith(PREFIX) ) {
+				mongod.getDB(DB_NAME).getCollection(name).drop();
+			}
+		}
+		tearDownMongo();
+	}
+	
+	private Collection<StepExecution> handle() throws Exception {
+		JobExecution jobExecution = jobRepository.createJobExecution("job", new JobParametersBuilder().toJobParameters());
+		StepExecution master = jobExecution.createStepExecution("master");
+		jobRepository.add(master);
+		
+		return handler.handle(new SimpleStepExecutionSplitter(jobRepository, true, "worker", new SimplePartitioner()), 
+			master);
+	}
+	
+	private MongoDBPartitionWorker createWorker(String workerId) throws Exception {
+		TaskletStep step = new TaskletStep("worker");
+		step.setJobRepository(jobRepository);
+		step.setTransactionManager(new ResourcelessTransactionManager());
+		step.setTasklet(new Tasklet() {
+			@Override
+			public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) {
+				executed.add( chunkContext.getStepContext().getStepName() );
+				return RepeatStatus.FINISHED;
+			}
+		});
+		step.afterPropertiesSet();
+		
+		MongoDBPartitionWorker worker = new MongoDBPartitionWorker();
+		worker.setMongo(mongod);
+		worker.setDb(DB_NAME);
+		worker.setCollection(QUEUE);
+		worker.setStep(step);
+		worker.setJobExplorer(jobExplorer);
+		worker.setWorkerId(workerId);
+		worker.setPollInterval(50);
+		worker.afterPropertiesSet();
+		return worker;
+	}
+	
+}
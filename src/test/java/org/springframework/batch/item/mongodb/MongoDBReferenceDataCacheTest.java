@@ -0,0 +1,124 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+
+import com.mongodb.BasicDBObject;
+
+/**
+ * Tests for {@link MongoDBReferenceDataCache}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBReferenceDataCacheTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBReferenceDataCache cache;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		insert("{_id: 1, name: 'one', version: 1}");
+		insert("{_id: 'de', name: 'Germany', version: 1}");
+		
+		// prepare unit under test
+		cache = new MongoDBReferenceDataCache();
+		cache.setMongo(mongod);
+		cache.setDb(DB_NAME);
+		cache.setCollection(COLLECTION_NAME);
+	}
+	
+	@Test
+	public void should_look_up_numeric_and_other_keys() throws Exception {
+		// given
+		cache.afterPropertiesSet();
+		JobExecution jobExecution = new JobExecution(1L);
+		StepExecution stepExecution = new StepExecution("step", jobExecution);
+		cache.beforeJob(jobExecution);
+		cache.beforeStep(stepExecution);
+		StepSynchronizationManager.register(stepExecution);
+		
+		// when
+		String one = (String)cache.get(1L).get("name");
+		String oneAsInteger = (String)cache.get((Object)1).get("name");
+		String germany = (String)cache.get("de").get("name");
+		cache.get("fr");
+		cache.afterStep(stepExecution);
+		cache.afterJob(jobExecution);
+		
+		// then
+		assertThat( one, is("one") );
+		assertThat( oneAsInteger, is("one") );
+		assertThat( germany, is("Germany") );
+		assertThat( stepExecution.getExecutionContext().getLong("referenceData.hits"), is(3L) );
+		assertThat( stepExecution.getExecutionContext().getLong("referenceData.misses"), is(1L) );
+	}
+
+	@Test
+	public void should_reload_changed_collection() throws Exception {
+		// given
+		cache.setVersionField("version");
+		cache.setVersionCheckInterval(0);
+		cache.afterPropertiesSet();
+		JobExecution jobExecution = new JobExecution(1L);
+		cache.beforeJob(jobExecution);
+		StepSynchronizationManager.register( new StepExecution("step", jobExecution) );
+		
+		// when
+		insert("{_id: 2, name: 'two', version: 1}");
+		boolean foundBeforeChange = cache.get(2L) != null;
+		collection.update( new BasicDBObject("_id", 2), new BasicDBObject("$set", new BasicDBObject("version", 2)) );
+		boolean foundAfterChange = cache.get(2L) != null;
+		
+		// then
+		assertThat( foundBeforeChange, is(false) );
+		assertThat( foundAfterChange, is(true) );
+	}
+	
+	@Test
+	public void should_keep_copies_of_concurrent_jobs() throws Exception {
+		// given
+		cache.afterPropertiesSet();
+		JobExecution first = new JobExecution(1L);
+		JobExecution second = new JobExecution(2L);
+		cache.beforeJob(first);
+		cache.beforeJob(second);
+		
+		// when
+		cache.afterJob(first);
+		StepSynchronizationManager.register( new StepExecution("step", second) );
+		String one = (String)cache.get(1L).get("name");
+		
+		// then
+		assertThat( one, is("one") );
+		assertThat( cache.getHitCount(), is(1L) );
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void should_detect_lookup_outside_of_job() throws Exception {
+		// given
+		cache.afterPropertiesSet();
+		cache.beforeJob( new JobExecution(1L) );
+		StepSynchronizationManager.register( new StepExecution("step", new JobExecution(2L)) );
+		
+		// when
+		cache.get(1L);
+		
+		// then: expect exception
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		StepSynchronizationManager.close();
+		tearDownMongo();
+	}
+	
+}
@@ -0,0 +1,112 @@
+package org.springframework.batch.item.mongodb;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Tests for {@link MongoDBUpsertItemWriter}.
+ * <p/>
+ * This test assumes that a mongod instance is running on localhost at the default port 27017. 
+ * If you want to use other values, use VM parameters -Dhost=... and -Dport=...
+ */
+public class MongoDBUpsertItemWriterTest extends AbstractMongoDBTest {
+
+	/** Unit under test. */
+	protected MongoDBUpsertItemWriter writer;
+	
+	@Before
+	public void setUp() throws Exception {
+		setUpMongo();
+		
+		// prepare unit under test
+		writer = new MongoDBUpsertItemWriter();
+		writer.setMongo(mongod);
+		writer.setDb(DB_NAME);
+		writer.setCollection(COLLECTION_NAME);
+		writer.setTransactional(false);
+		writer.setKeyField("url");
+		writer.afterPropertiesSet();
+	}
+	
+	@Test
+	public void should_combine_updates_per_key() throws Exception {
+		// given
+		List<DBObject> updates = updates(
+			"{url: 'a', $inc: {views: 1}, $set: {title: 'A'}, $push: {hits: 1}}",
+			"{url: 'b', $inc: {views: 1}}",
+			"{url: 'a', $inc: {views: 2}, $set: {title: 'AA'}, $push: {hits: {$each: [2, 3]}}}");
+		
+		// when
+		writer.write(updates);
+		writer.write(updates);
+		
+		// then
+		assertCollectionCount(2);
+		DBObject a = collection.findOne( JSON.parse("{url: 'a'}") );
+		assertThat( a.get("views"), is((Object)6) );
+		assertThat( a.get("title"), is((Object)"AA") );
+		assertThat( ((List<?>)a.get("hits")).size(), is(6) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void should_detect_missing_key() throws Exception {
+		// when
+		writer.write( updates("{$inc: {views: 1}}") );
+		
+		// then: expect exception
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void should_reject_push_modifiers() throws Exception {
+		// when
+		writer.write( updates("{url: 'a', $push: {hits: {$each: [1, 2], $slice: -5}}}") );
+		
+		// then: expect exception
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void should_reject_pre_encoding() throws Exception {
+		// given
+		writer.setPreEncode(true);
+		
+		// when
+		writer.afterPropertiesSet();
+		
+		// then: expect exception
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void should_reject_spilling() throws Exception {
+		// given
+		writer.setSpillThreshold(1024);
+		
+		// when
+		writer.afterPropertiesSet();
+		
+		// then: expect exception
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		tearDownMongo();
+	}
+	
+	private static List<DBObject> updates(String... json) {
+		List<DBObject> updates = new ArrayList<DBObject>();
+		for (String s: json) {
+			updates.add( (DBObject)JSON.parse(s) );
+		}
+		return updates;
+	}
+	
+}